@@ -0,0 +1,131 @@
+package src.bench;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import src.net.Protocol;
+import src.net.TServerSocket;
+import src.net.TSocket;
+import src.util.Log;
+import src.util.SimNet_FullDuplex;
+
+/**
+ * Connection storm: clients connect in bursts while an acceptor drains the listener,
+ * one connection per accept call or in batches. The main method reports connections
+ * accepted and accept queue overflows for several backlogs:
+ * java -cp target/benchmarks.jar src.bench.AcceptBench [connections]
+ */
+@State(Scope.Benchmark)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class AcceptBench {
+
+    /** Server port, client ports start right above it */
+    private static final int PORT = 80;
+
+    /** Connections per burst */
+    private static final int BURST = 32;
+
+    @Param({"1", "32"})
+    int batch;
+
+    private Storm storm;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        Log.getLog().setLevel(Log.Level.WARN);
+        storm = new Storm(BURST, batch);
+    }
+
+    @Benchmark
+    public int burst() {
+        return storm.burst(BURST);
+    }
+
+    public static void main(String[] args) {
+        int connections = (args.length > 0) ? Integer.parseInt(args[0]) : 2000;
+        Log.getLog().setLevel(Log.Level.OFF);
+        System.out.printf("%7s %5s %9s %8s %10s %8s%n", "backlog", "batch", "accepted", "ms", "overflows", "cookies");
+        for (int backlog : new int[]{10, 128}) {
+            for (int batch : new int[]{1, 32}) {
+                Storm s = new Storm(backlog, batch);
+                long start = System.nanoTime();
+                int accepted = s.burst(connections);
+                long ms = (System.nanoTime() - start) / 1_000_000;
+                System.out.printf("%7d %5d %9d %8d %10d %8d%n", backlog, batch, accepted, ms,
+                        s.server.getAcceptOverflows(), s.server.getSynCookiesSent());
+            }
+        }
+        // Protocol receiver threads are not daemons
+        System.exit(0);
+    }
+
+    /**
+     * Listener and client protocol over their own network.
+     */
+    static class Storm {
+
+        final Protocol client;
+        final TServerSocket server;
+        final int batch;
+        final List<TSocket> accepted;
+        int nextPort;
+
+        Storm(int backlog, int batch) {
+            SimNet_FullDuplex net = new SimNet_FullDuplex();
+            client = new HandshakeBench.BenchProtocol(net.getCltEnd());
+            server = new BacklogServerSocket(new HandshakeBench.BenchProtocol(net.getSrvEnd()), PORT, backlog);
+            this.batch = batch;
+            accepted = new ArrayList<>(batch);
+            nextPort = PORT + 1;
+        }
+
+        /**
+         * Connects n clients at once, then accepts them all, or until none has arrived
+         * for a second, since handshakes completed while the accept queue was full are
+         * dropped and some are never retried.
+         *
+         * @return the number of connections accepted
+         */
+        int burst(int n) {
+            for (int i = 0; i < n; i++) {
+                new HandshakeBench.BenchSocket(client, nextPort++, PORT).connect();
+            }
+            int total = 0;
+            while (total < n) {
+                if (batch == 1) {
+                    if (server.accept(1000) == null) {
+                        return total;
+                    }
+                    total++;
+                } else {
+                    accepted.clear();
+                    int got = server.acceptBatch(batch, accepted);
+                    if (got == 0) {
+                        if (server.accept(1000) == null) {
+                            return total;
+                        }
+                        got = 1;
+                    }
+                    total += got;
+                }
+            }
+            return total;
+        }
+    }
+
+    /**
+     * Server socket with a custom backlog, created outside its package.
+     */
+    static class BacklogServerSocket extends TServerSocket {
+        BacklogServerSocket(Protocol p, int port, int backlog) {
+            super(p, port, backlog);
+        }
+    }
+}
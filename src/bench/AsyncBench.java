@@ -0,0 +1,97 @@
+package src.bench;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import src.net.TServerSocket;
+import src.net.TSocket;
+import src.util.Log;
+import src.util.SimNet_FullDuplex;
+
+/**
+ * Echo server and clients written as chains of asynchronous socket operations over a
+ * loss-free {@link SimNet_FullDuplex}. Every stage runs on a protocol receive thread
+ * as its future completes, so no thread is parked per connection or per operation:
+ * java -cp target/benchmarks.jar src.bench.AsyncBench [connections] [messageBytes]
+ */
+public class AsyncBench {
+
+    /** Server port, client ports start right above it */
+    private static final int PORT = 80;
+
+    /** Handshakes in progress at once, so that SYNs do not overflow the links */
+    private static final int CONNECTING = 32;
+
+    public static void main(String[] args) throws InterruptedException {
+        int connections = (args.length > 0) ? Integer.parseInt(args[0]) : 10_000;
+        int size = (args.length > 1) ? Integer.parseInt(args[1]) : 100;
+        Log.getLog().setLevel(Log.Level.OFF);
+        SimNet_FullDuplex net = new SimNet_FullDuplex();
+        HandshakeBench.BenchProtocol client = new HandshakeBench.BenchProtocol(net.getCltEnd());
+        TServerSocket server = new AcceptBench.BacklogServerSocket(
+                new HandshakeBench.BenchProtocol(net.getSrvEnd()), PORT, connections);
+        accept(server, size);
+
+        CountDownLatch done = new CountDownLatch(connections);
+        AtomicInteger opened = new AtomicInteger();
+        long start = System.nanoTime();
+        for (int i = 0; i < Math.min(CONNECTING, connections); i++) {
+            open(client, opened, connections, size, done);
+        }
+        done.await();
+        double secs = (System.nanoTime() - start) / 1e9;
+        System.out.printf("%d connections echoing %d bytes: %.2f s, %d threads live%n",
+                connections, size, secs, Thread.activeCount());
+        // Protocol receiver threads are not daemons
+        System.exit(0);
+    }
+
+    /**
+     * Accepts connections forever, echoing every one until the peer closes it.
+     */
+    private static void accept(TServerSocket server, int size) {
+        server.acceptAsync().thenAccept(sc -> {
+            echo(sc, ByteBuffer.allocate(size));
+            accept(server, size);
+        });
+    }
+
+    private static void echo(TSocket sc, ByteBuffer buf) {
+        buf.clear();
+        sc.receiveAsync(buf).thenAccept(n -> {
+            if (n < 0) {
+                return;
+            }
+            buf.flip();
+            sc.sendAsync(buf).thenRun(() -> echo(sc, buf));
+        });
+    }
+
+    /**
+     * Opens the next connection, sends one message and waits for its echo, then opens
+     * another one. Connections are left open, since close blocks until the data sent
+     * is acknowledged and must not be called from a receive thread.
+     */
+    private static void open(HandshakeBench.BenchProtocol client, AtomicInteger opened,
+                             int connections, int size, CountDownLatch done) {
+        int i = opened.getAndIncrement();
+        if (i >= connections) {
+            return;
+        }
+        TSocket sc = new HandshakeBench.BenchSocket(client, PORT + 1 + i, PORT);
+        ByteBuffer buf = ByteBuffer.allocate(size);
+        sc.connectAsync()
+                .thenCompose(s -> s.sendAsync(ByteBuffer.allocate(size)))
+                .thenCompose(n -> receiveFully(sc, buf))
+                .thenRun(() -> {
+                    done.countDown();
+                    open(client, opened, connections, size, done);
+                });
+    }
+
+    private static CompletableFuture<ByteBuffer> receiveFully(TSocket sc, ByteBuffer buf) {
+        return sc.receiveAsync(buf).thenCompose(n ->
+                (n < 0 || !buf.hasRemaining()) ? CompletableFuture.completedFuture(buf) : receiveFully(sc, buf));
+    }
+}
@@ -0,0 +1,58 @@
+package src.bench;
+
+import java.nio.ByteBuffer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import src.util.Const;
+import src.util.TCPSegment;
+import src.util.TCPSegmentCodec;
+
+/**
+ * Throughput benchmark for {@link TCPSegmentCodec}. Its round-trip fuzz check is
+ * {@link src.net.TestCodec}.
+ */
+@State(Scope.Thread)
+public class CodecBench {
+
+    @Param({"0", "100", "1460"})
+    int payload;
+
+    @Param({"heap", "direct"})
+    String buffer;
+
+    private TCPSegment seg, out;
+    private ByteBuffer buf;
+    private int seq;
+
+    @Setup
+    public void setup() {
+        buf = buffer.equals("heap")
+                ? ByteBuffer.allocate(Const.MTU_ETHERNET + 64)
+                : ByteBuffer.allocateDirect(Const.MTU_ETHERNET + 64);
+        seg = new TCPSegment();
+        seg.setPsh(payload > 0);
+        seg.setAck(payload == 0);
+        seg.setSourcePort(10);
+        seg.setDestinationPort(80);
+        if (payload > 0) {
+            seg.setData(new byte[payload]);
+        }
+        out = new TCPSegment();
+    }
+
+    /**
+     * Encodes and decodes one segment per operation.
+     */
+    @Benchmark
+    public int encodeDecode() {
+        seg.setSeqNum(seq++);
+        buf.clear();
+        TCPSegmentCodec.encode(seg, buf);
+        buf.flip();
+        TCPSegmentCodec.decode(buf, out);
+        return out.getSeqNum();
+    }
+}
@@ -0,0 +1,222 @@
+package src.bench;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import src.net.Protocol;
+import src.net.TSocket;
+import src.util.CongestionControl;
+import src.util.CongestionControl_Cubic;
+import src.util.CongestionControl_NewReno;
+import src.util.CongestionControl_Reno;
+import src.util.Log;
+import src.util.SimNetMonitor;
+import src.util.SimNet_FullDuplex;
+import src.util.TCPSegment;
+
+/**
+ * Bulk transfer over a lossy {@link SimNet_FullDuplex} with each congestion control
+ * algorithm. JMH measures the time to transfer a fixed amount of data; a summary of
+ * goodput and occupancy of the data link queue is printed by:
+ * java -cp target/benchmarks.jar src.bench.CongestionBench [segments]
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class CongestionBench {
+
+    /** Server port */
+    private static final int PORT = 80;
+
+    /** Send window, large enough for the congestion window to be the limit */
+    private static final int WINDOW = 64;
+
+    /** Segments per benchmark operation */
+    private static final int SEGMENTS = 256;
+
+    @Param({"reno", "newreno", "cubic"})
+    String algorithm;
+
+    @Param({"0.0", "0.01", "0.05"})
+    double loss;
+
+    private Transfer transfer;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        Log.getLog().setLevel(Log.Level.OFF);
+        transfer = new Transfer(algorithm, loss);
+    }
+
+    @Benchmark
+    public int transfer() {
+        return transfer.run(SEGMENTS);
+    }
+
+    public static void main(String[] args) {
+        int segments = (args.length > 0) ? Integer.parseInt(args[0]) : 2048;
+        Log.getLog().setLevel(Log.Level.OFF);
+        System.out.printf("%-8s %6s %12s %10s %10s%n", "cc", "loss", "goodput KB/s", "mean queue", "max queue");
+        for (String loss : new String[]{"0.0", "0.01", "0.05"}) {
+            for (String algorithm : new String[]{"reno", "newreno", "cubic"}) {
+                Transfer t = new Transfer(algorithm, Double.parseDouble(loss));
+                long start = System.nanoTime();
+                int bytes = t.run(segments);
+                double secs = (System.nanoTime() - start) / 1e9;
+                System.out.printf("%-8s %6s %12.0f %10.1f %10d%n", algorithm, loss,
+                        bytes / 1024.0 / secs, t.occupancy.mean(), t.occupancy.max());
+            }
+        }
+        // Protocol receiver threads are not daemons
+        System.exit(0);
+    }
+
+    static CongestionControl newAlgorithm(String name) {
+        switch (name) {
+            case "reno":
+                return new CongestionControl_Reno();
+            case "newreno":
+                return new CongestionControl_NewReno();
+            case "cubic":
+                return new CongestionControl_Cubic();
+            default:
+                throw new IllegalArgumentException("Unknown algorithm: " + name);
+        }
+    }
+
+    /**
+     * Established connection with a server thread draining everything it receives.
+     */
+    static class Transfer {
+
+        final Occupancy occupancy = new Occupancy();
+        final BulkSocket client;
+        final byte[] chunk;
+
+        Transfer(String algorithm, double loss) {
+            this(algorithm, loss, loss, TSocket.GO_BACK_N, true);
+        }
+
+        Transfer(String algorithm, double lossPsh, double lossAck, int mode, boolean fastRetransmit) {
+            SimNet_FullDuplex net = new SimNet_FullDuplex(lossPsh, lossAck, () -> new MeteredLink(occupancy));
+            HandshakeBench.BenchServerSocket server = new HandshakeBench.BenchServerSocket(
+                    new HandshakeBench.BenchProtocol(net.getSrvEnd()), PORT);
+            client = new BulkSocket(new HandshakeBench.BenchProtocol(net.getCltEnd()), PORT + 1, PORT);
+            client.setSendWindow(WINDOW);
+            client.setCongestionControl(newAlgorithm(algorithm));
+            client.setTransferMode(mode);
+            client.setFastRetransmit(fastRetransmit);
+            client.connect();
+            TSocket accepted = server.accept();
+            accepted.setTransferMode(mode);
+            Thread sink = new Thread(() -> {
+                byte[] buf = new byte[64 * 1024];
+                while (accepted.receiveData(buf, 0, buf.length) >= 0) {
+                    // Discard
+                }
+            }, "CongestionBench-sink");
+            sink.setDaemon(true);
+            sink.start();
+            chunk = new byte[client.getMSS()];
+        }
+
+        /**
+         * Sends the given number of full segments and waits until all are acknowledged.
+         *
+         * @return the number of bytes transferred
+         */
+        int run(int segments) {
+            for (int i = 0; i < segments; i++) {
+                client.sendData(chunk, 0, chunk.length);
+            }
+            client.awaitAcked();
+            return segments * chunk.length;
+        }
+    }
+
+    /**
+     * Client socket that can wait until all its data is acknowledged.
+     */
+    static class BulkSocket extends TSocket {
+
+        BulkSocket(Protocol p, int localPort, int remotePort) {
+            super(p, localPort, remotePort);
+        }
+
+        void awaitAcked() {
+            lock.lock();
+            try {
+                while (!sndRtQueue.empty()) {
+                    appCV.awaitUninterruptibly();
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Link queue lengths seen by data segments.
+     */
+    static class Occupancy {
+
+        private long samples, total;
+        private int max;
+
+        synchronized void sample(int n) {
+            samples++;
+            total += n;
+            max = Math.max(max, n);
+        }
+
+        synchronized double mean() {
+            return (samples == 0) ? 0 : (double) total / samples;
+        }
+
+        synchronized int max() {
+            return max;
+        }
+    }
+
+    /**
+     * Link sampling its queue length each time a data segment is queued.
+     */
+    static class MeteredLink extends SimNetMonitor {
+
+        private final Occupancy occupancy;
+
+        MeteredLink(Occupancy occupancy) {
+            this.occupancy = occupancy;
+        }
+
+        @Override
+        public void send(TCPSegment seg) {
+            sample(seg);
+            super.send(seg);
+        }
+
+        @Override
+        public boolean trySend(TCPSegment seg) {
+            sample(seg);
+            return super.trySend(seg);
+        }
+
+        private void sample(TCPSegment seg) {
+            if (seg.isPsh()) {
+                mon.lock();
+                try {
+                    occupancy.sample(queue.size());
+                } finally {
+                    mon.unlock();
+                }
+            }
+        }
+    }
+}
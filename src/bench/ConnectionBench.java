@@ -0,0 +1,66 @@
+package src.bench;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import src.net.TServerSocket;
+import src.net.TSocket;
+import src.util.Log;
+import src.util.SimNet_FullDuplex;
+import src.util.Threads;
+
+/**
+ * Holds many concurrent connections over a loss-free {@link SimNet_FullDuplex}, each
+ * served by a worker blocked in receiveData on a thread of the chosen execution mode:
+ * java -cp target/benchmarks.jar src.bench.ConnectionBench [connections] [platform|virtual]
+ * <p>
+ * Virtual threads need Java 21 or later; platform threads are limited by their stacks.
+ */
+public class ConnectionBench {
+
+    /** Server port, client ports start right above it */
+    private static final int PORT = 80;
+
+    public static void main(String[] args) throws InterruptedException {
+        int connections = (args.length > 0) ? Integer.parseInt(args[0]) : 10_000;
+        String mode = (args.length > 1) ? args[1] : (Threads.virtualSupported() ? "virtual" : "platform");
+        Log.getLog().setLevel(Log.Level.OFF);
+        Executor executor = Threads.executor(mode.equals("virtual")
+                ? Threads.virtual("worker-") : Threads.platform("worker-", true));
+
+        SimNet_FullDuplex net = new SimNet_FullDuplex();
+        HandshakeBench.BenchProtocol client = new HandshakeBench.BenchProtocol(net.getCltEnd());
+        TServerSocket server = new HandshakeBench.BenchServerSocket(
+                new HandshakeBench.BenchProtocol(net.getSrvEnd()), PORT);
+
+        CountDownLatch served = new CountDownLatch(connections);
+        long start = System.nanoTime();
+        // Handshakes one at a time, so the listen queue never overflows
+        TSocket[] sockets = new TSocket[connections];
+        for (int i = 0; i < connections; i++) {
+            sockets[i] = new HandshakeBench.BenchSocket(client, PORT + 1 + i, PORT);
+            sockets[i].connect();
+            TSocket sc = server.accept();
+            executor.execute(() -> {
+                byte[] buf = new byte[1];
+                sc.receiveData(buf, 0, 1);
+                served.countDown();
+                // Keep the connection and its worker alive until the run ends
+                sc.receiveData(buf, 0, 1);
+            });
+        }
+        byte[] one = {1};
+        for (TSocket sc : sockets) {
+            sc.sendData(one, 0, 1);
+        }
+        served.await();
+        double secs = (System.nanoTime() - start) / 1e9;
+
+        Runtime rt = Runtime.getRuntime();
+        rt.gc();
+        long heap = (rt.totalMemory() - rt.freeMemory()) >> 20;
+        System.out.printf("%d connections on %s threads: %.2f s, %d platform threads live, %d MB heap%n",
+                connections, mode, secs, Thread.activeCount(), heap);
+        // Protocol receiver threads are not daemons
+        System.exit(0);
+    }
+}
@@ -0,0 +1,85 @@
+package src.bench;
+
+import java.util.Random;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import src.net.Protocol;
+import src.util.Const;
+import src.util.SimNetMonitor;
+import src.util.TSocketBase;
+
+/**
+ * Cost of {@link Protocol#getMatchingTSocket} with many registered connections,
+ * for established connections and for segments falling through to a listener.
+ */
+@State(Scope.Benchmark)
+public class DemuxBench {
+
+    /** Number of lookup keys cycled through */
+    private static final int KEYS = 1024;
+
+    @Param({"10", "1000", "100000"})
+    int sockets;
+
+    private BenchProtocol proto;
+    private int[] localPorts, remotePorts;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        proto = new BenchProtocol();
+        proto.addListenTSocket(new BenchSocket(80, 0));
+        for (int i = 0; i < sockets; i++) {
+            proto.addActiveTSocket(new BenchSocket(80, 1024 + i));
+        }
+        Random rnd = new Random(Const.SEED);
+        localPorts = new int[KEYS];
+        remotePorts = new int[KEYS];
+        for (int i = 0; i < KEYS; i++) {
+            localPorts[i] = 80;
+            remotePorts[i] = 1024 + rnd.nextInt(sockets);
+        }
+    }
+
+    @Benchmark
+    public TSocketBase established() {
+        int i = next++ & (KEYS - 1);
+        return proto.lookup(localPorts[i], remotePorts[i]);
+    }
+
+    @Benchmark
+    public TSocketBase listener() {
+        int i = next++ & (KEYS - 1);
+        return proto.lookup(80, remotePorts[i] + sockets);
+    }
+
+    /**
+     * Protocol over an idle network, exposing the demultiplexing lookup.
+     */
+    static class BenchProtocol extends Protocol {
+
+        BenchProtocol() {
+            super(new SimNetMonitor());
+        }
+
+        TSocketBase lookup(int localPort, int remotePort) {
+            return getMatchingTSocket(localPort, remotePort);
+        }
+    }
+
+    /**
+     * Socket that only carries its ports.
+     */
+    static class BenchSocket extends TSocketBase {
+
+        BenchSocket(int localPort, int remotePort) {
+            super(null);
+            this.localPort = localPort;
+            this.remotePort = remotePort;
+        }
+    }
+}
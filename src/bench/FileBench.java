@@ -0,0 +1,117 @@
+package src.bench;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Random;
+import src.net.TServerSocket;
+import src.net.TSocket;
+import src.util.Log;
+import src.util.SimNet_FullDuplex;
+
+/**
+ * Sends a file over a {@link SimNet_FullDuplex}, loss-free unless a loss rate is given,
+ * either reading it into an array and calling sendData, with the receiver calling
+ * receiveData and writing the array out, or with transferFrom over a memory mapping
+ * and transferTo. Checks that the copy matches and reports the time and the bytes
+ * allocated by the application threads:
+ * java -cp target/benchmarks.jar src.bench.FileBench [megabytes] [loss]
+ */
+public class FileBench {
+
+    /** Server port, client ports start right above it */
+    private static final int PORT = 80;
+
+    /** Array size of the copying transfer */
+    private static final int CHUNK = 64 * 1024;
+
+    public static void main(String[] args) throws Exception {
+        int mb = (args.length > 0) ? Integer.parseInt(args[0]) : 16;
+        double loss = (args.length > 1) ? Double.parseDouble(args[1]) : 0.0;
+        Log.getLog().setLevel(Log.Level.OFF);
+        Path in = Files.createTempFile("filebench", ".in");
+        Path out = Files.createTempFile("filebench", ".out");
+        in.toFile().deleteOnExit();
+        out.toFile().deleteOnExit();
+        byte[] block = new byte[1 << 20];
+        new Random(1).nextBytes(block);
+        try (FileChannel ch = FileChannel.open(in, StandardOpenOption.WRITE)) {
+            for (int i = 0; i < mb; i++) {
+                ch.write(ByteBuffer.wrap(block));
+            }
+        }
+
+        SimNet_FullDuplex net = new SimNet_FullDuplex(loss, loss);
+        HandshakeBench.BenchProtocol client = new HandshakeBench.BenchProtocol(net.getCltEnd());
+        TServerSocket server = new HandshakeBench.BenchServerSocket(
+                new HandshakeBench.BenchProtocol(net.getSrvEnd()), PORT);
+        System.out.printf("%8s %6s %8s %12s %12s %6s%n", "mode", "MB", "ms", "sender KB", "receiver KB", "match");
+        int port = PORT + 1;
+        for (boolean mapped : new boolean[]{false, true, false, true}) {
+            TSocket sender = new HandshakeBench.BenchSocket(client, port++, PORT);
+            sender.connect();
+            TSocket receiver = server.accept();
+            long[] rcvAlloc = new long[1];
+            Thread t = new Thread(() -> rcvAlloc[0] = receive(receiver, out, mapped));
+            long start = System.nanoTime();
+            t.start();
+            long sndAlloc = send(sender, in, mapped);
+            t.join();
+            long ms = (System.nanoTime() - start) / 1_000_000;
+            boolean match = Files.mismatch(in, out) == -1;
+            System.out.printf("%8s %6d %8d %12d %12d %6s%n", mapped ? "mapped" : "copy",
+                    mb, ms, sndAlloc >> 10, rcvAlloc[0] >> 10, match);
+        }
+        // Protocol receiver threads are not daemons
+        System.exit(0);
+    }
+
+    private static long send(TSocket sc, Path in, boolean mapped) throws IOException {
+        long before = allocated();
+        try (FileChannel ch = FileChannel.open(in, StandardOpenOption.READ)) {
+            if (mapped) {
+                sc.transferFrom(ch, 0, ch.size());
+            } else {
+                byte[] buf = new byte[CHUNK];
+                ByteBuffer bb = ByteBuffer.wrap(buf);
+                int n;
+                while ((n = ch.read(bb.clear())) > 0) {
+                    sc.sendData(buf, 0, n);
+                }
+            }
+        }
+        sc.close();
+        return allocated() - before;
+    }
+
+    private static long receive(TSocket sc, Path out, boolean mapped) {
+        long before = allocated();
+        try (FileChannel ch = FileChannel.open(out, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            if (mapped) {
+                sc.transferTo(ch);
+            } else {
+                byte[] buf = new byte[CHUNK];
+                int n;
+                while ((n = sc.receiveData(buf, 0, buf.length)) > 0) {
+                    ch.write(ByteBuffer.wrap(buf, 0, n));
+                }
+            }
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        return allocated() - before;
+    }
+
+    /**
+     * Returns the bytes allocated so far by the current thread.
+     */
+    private static long allocated() {
+        return ((com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean())
+                .getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+}
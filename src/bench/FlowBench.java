@@ -0,0 +1,109 @@
+package src.bench;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Flow;
+import java.util.concurrent.SubmissionPublisher;
+import java.util.concurrent.locks.LockSupport;
+import src.net.TServerSocket;
+import src.net.TSocket;
+import src.util.Log;
+import src.util.SimNet_FullDuplex;
+
+/**
+ * Streams messages from a publisher through a connection to a subscriber that
+ * consumes each segment slowly, over a loss-free {@link SimNet_FullDuplex}. With the
+ * receive window bound to the subscriber's demand, the sender finishes only shortly
+ * before the subscriber instead of filling the receive queue:
+ * java -cp target/benchmarks.jar src.bench.FlowBench [messages] [delayUs]
+ */
+public class FlowBench {
+
+    /** Server port, the client port is right above it */
+    private static final int PORT = 80;
+
+    /** Segments the subscriber requests at a time */
+    private static final int BATCH = 4;
+
+    public static void main(String[] args) throws InterruptedException {
+        int messages = (args.length > 0) ? Integer.parseInt(args[0]) : 2000;
+        long delayUs = (args.length > 1) ? Long.parseLong(args[1]) : 500;
+        Log.getLog().setLevel(Log.Level.OFF);
+        SimNet_FullDuplex net = new SimNet_FullDuplex();
+        HandshakeBench.BenchProtocol client = new HandshakeBench.BenchProtocol(net.getCltEnd());
+        TServerSocket server = new HandshakeBench.BenchServerSocket(
+                new HandshakeBench.BenchProtocol(net.getSrvEnd()), PORT);
+        TSocket sender = new HandshakeBench.BenchSocket(client, PORT + 1, PORT);
+        sender.connect();
+        TSocket receiver = server.accept();
+
+        SlowSubscriber slow = new SlowSubscriber(delayUs);
+        receiver.getPublisher().subscribe(slow);
+
+        long start = System.nanoTime();
+        try (SubmissionPublisher<ByteBuffer> publisher = new SubmissionPublisher<>()) {
+            publisher.subscribe(sender.getSubscriber());
+            for (int i = 0; i < messages; i++) {
+                publisher.submit(ByteBuffer.allocate(1000));
+            }
+            // Every message is taken once the publisher has nothing left to deliver
+            while (publisher.estimateMaximumLag() > 0) {
+                Thread.sleep(1);
+            }
+        }
+        long sent = (System.nanoTime() - start) / 1_000_000;
+        sender.close();
+        slow.done.await();
+        long received = (System.nanoTime() - start) / 1_000_000;
+        System.out.printf("%d KB to a subscriber taking %d us per segment: sender done %d ms, "
+                        + "subscriber done %d ms, %d bytes in %d segments%n",
+                messages, delayUs, sent, received, slow.bytes, slow.segments);
+        // Protocol receiver threads are not daemons
+        System.exit(0);
+    }
+
+    /**
+     * Subscriber spending a fixed time on every segment, requesting a few at a time.
+     */
+    static class SlowSubscriber implements Flow.Subscriber<ByteBuffer> {
+
+        final long delayUs;
+        final CountDownLatch done = new CountDownLatch(1);
+        Flow.Subscription subscription;
+        int segments, outstanding;
+        long bytes;
+
+        SlowSubscriber(long delayUs) {
+            this.delayUs = delayUs;
+        }
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            this.subscription = subscription;
+            outstanding = BATCH;
+            subscription.request(BATCH);
+        }
+
+        @Override
+        public void onNext(ByteBuffer item) {
+            segments++;
+            bytes += item.remaining();
+            LockSupport.parkNanos(delayUs * 1000);
+            if (--outstanding == 0) {
+                outstanding = BATCH;
+                subscription.request(BATCH);
+            }
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            throwable.printStackTrace();
+            done.countDown();
+        }
+
+        @Override
+        public void onComplete() {
+            done.countDown();
+        }
+    }
+}
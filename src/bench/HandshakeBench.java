@@ -0,0 +1,126 @@
+package src.bench;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import src.net.Protocol;
+import src.net.TServerSocket;
+import src.net.TSocket;
+import src.util.Log;
+import src.util.SimNet;
+import src.util.SimNet_FullDuplex;
+import src.util.TCPSegment;
+
+/**
+ * End-to-end connection rate: client connect, server accept and client established,
+ * over a loss-free {@link SimNet_FullDuplex}. The main method measures it during a
+ * flood of SYNs that never complete their handshake:
+ * java -cp target/benchmarks.jar src.bench.HandshakeBench [syns] [connections]
+ */
+@State(Scope.Benchmark)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class HandshakeBench {
+
+    /** Server port */
+    private static final int PORT = 80;
+
+    private BenchProtocol client;
+    private TServerSocket server;
+    private int nextPort;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        Log.getLog().setLevel(Log.Level.WARN);
+        SimNet_FullDuplex net = new SimNet_FullDuplex();
+        client = new BenchProtocol(net.getCltEnd());
+        server = new BenchServerSocket(new BenchProtocol(net.getSrvEnd()), PORT);
+        nextPort = PORT + 1;
+    }
+
+    @Benchmark
+    public TSocket handshake() {
+        BenchSocket sc = new BenchSocket(client, nextPort++, PORT);
+        sc.connect();
+        TSocket accepted = server.accept();
+        sc.awaitEstablished();
+        return accepted;
+    }
+
+    public static void main(String[] args) {
+        int syns = (args.length > 0) ? Integer.parseInt(args[0]) : 100_000;
+        int connections = (args.length > 1) ? Integer.parseInt(args[1]) : 1000;
+        HandshakeBench b = new HandshakeBench();
+        b.setup();
+        Log.getLog().setLevel(Log.Level.OFF);
+        SimNet flooder = b.client.getNetwork();
+        Runtime rt = Runtime.getRuntime();
+        long start = System.nanoTime();
+        for (int i = 0; i < syns; i++) {
+            TCPSegment syn = TCPSegment.obtain();
+            syn.setSyn(true);
+            syn.setSourcePort(PORT + 10_000 + (i % 50_000));
+            syn.setDestinationPort(PORT);
+            syn.setSeqNum(i);
+            flooder.send(syn);
+            if (i % 1000 == 0) {
+                b.handshake();
+            }
+        }
+        double floodSecs = (System.nanoTime() - start) / 1e9;
+        start = System.nanoTime();
+        for (int i = 0; i < connections; i++) {
+            b.handshake();
+        }
+        double secs = (System.nanoTime() - start) / 1e9;
+        rt.gc();
+        System.out.printf("%d SYNs in %.2f s: %d half-open, %d cookies sent, %d MB heap%n", syns, floodSecs,
+                b.server.getHalfOpen(), b.server.getSynCookiesSent(), (rt.totalMemory() - rt.freeMemory()) >> 20);
+        System.out.printf("%d handshakes after the flood: %.0f per second%n", connections, connections / secs);
+        // Protocol receiver threads are not daemons
+        System.exit(0);
+    }
+
+    /**
+     * Protocol created outside its package.
+     */
+    static class BenchProtocol extends Protocol {
+
+        BenchProtocol(SimNet end) {
+            super(end);
+        }
+    }
+
+    /**
+     * Server socket created outside its package.
+     */
+    static class BenchServerSocket extends TServerSocket {
+        BenchServerSocket(Protocol p, int port) {
+            super(p, port);
+        }
+    }
+
+    /**
+     * Client socket that can wait for the handshake to complete.
+     */
+    static class BenchSocket extends TSocket {
+
+        BenchSocket(Protocol p, int localPort, int remotePort) {
+            super(p, localPort, remotePort);
+        }
+
+        void awaitEstablished() {
+            lock.lock();
+            try {
+                while (state != ESTABLISHED) {
+                    appCV.awaitUninterruptibly();
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+}
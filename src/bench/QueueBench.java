@@ -0,0 +1,33 @@
+package src.bench;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import src.util.CircularQueue;
+import src.util.Const;
+
+/**
+ * Single-threaded cost of {@link CircularQueue} put and get.
+ */
+@State(Scope.Thread)
+public class QueueBench {
+
+    private CircularQueue<Integer> queue;
+    private final Integer item = 42;
+
+    @Setup
+    public void setup() {
+        queue = new CircularQueue<>(Const.SIMNET_QUEUE_SIZE);
+        // Keep the queue half full so head and tail wrap around
+        for (int i = 0; i < Const.SIMNET_QUEUE_SIZE / 2; i++) {
+            queue.put(item);
+        }
+    }
+
+    @Benchmark
+    public Integer putGet() {
+        queue.put(item);
+        return queue.get();
+    }
+}
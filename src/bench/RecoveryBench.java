@@ -0,0 +1,76 @@
+package src.bench;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import src.net.TSocket;
+import src.util.Const;
+import src.util.Log;
+import src.util.SimNet_Loss;
+
+/**
+ * Loss recovery over {@link SimNet_Loss} at {@link Const#LOSS_RATE_PSH} and
+ * {@link Const#LOSS_RATE_ACK}, with and without fast retransmit. JMH measures the
+ * time to transfer a fixed amount of data; the number of recoveries by timeout and
+ * by duplicate ACKs is printed by:
+ * java -cp target/benchmarks.jar src.bench.RecoveryBench [segments]
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class RecoveryBench {
+
+    /** Segments per benchmark operation */
+    private static final int SEGMENTS = 128;
+
+    @Param({"gbn", "sr"})
+    String mode;
+
+    @Param({"false", "true"})
+    boolean fastRetransmit;
+
+    private CongestionBench.Transfer transfer;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        Log.getLog().setLevel(Log.Level.OFF);
+        transfer = new CongestionBench.Transfer("newreno", Const.LOSS_RATE_PSH, Const.LOSS_RATE_ACK,
+                modeOf(mode), fastRetransmit);
+    }
+
+    @Benchmark
+    public int transfer() {
+        return transfer.run(SEGMENTS);
+    }
+
+    public static void main(String[] args) {
+        int segments = (args.length > 0) ? Integer.parseInt(args[0]) : 1024;
+        Log.getLog().setLevel(Log.Level.OFF);
+        System.out.printf("Loss rates: PSH %.2f, ACK %.2f%n", Const.LOSS_RATE_PSH, Const.LOSS_RATE_ACK);
+        System.out.printf("%-4s %5s %8s %12s %10s %8s%n", "mode", "fast", "ms", "goodput KB/s", "timeouts", "dupack");
+        for (String mode : new String[]{"gbn", "sr"}) {
+            for (boolean fast : new boolean[]{false, true}) {
+                CongestionBench.Transfer t = new CongestionBench.Transfer("newreno", Const.LOSS_RATE_PSH,
+                        Const.LOSS_RATE_ACK, modeOf(mode), fast);
+                long start = System.nanoTime();
+                int bytes = t.run(segments);
+                double secs = (System.nanoTime() - start) / 1e9;
+                System.out.printf("%-4s %5s %8d %12.0f %10d %8d%n", mode, fast, (long) (secs * 1000),
+                        bytes / 1024.0 / secs, t.client.getTimeoutRecoveries(), t.client.getFastRecoveries());
+            }
+        }
+        // Protocol receiver threads are not daemons
+        System.exit(0);
+    }
+
+    private static int modeOf(String mode) {
+        return mode.equals("sr") ? TSocket.SELECTIVE_REPEAT : TSocket.GO_BACK_N;
+    }
+}
@@ -0,0 +1,49 @@
+package src.bench;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import src.util.SackScoreboard;
+
+/**
+ * Cost of the sender SACK scoreboard. Selective repeat transfers through deterministic
+ * loss patterns are checked by {@link src.net.TestSack}.
+ */
+@State(Scope.Thread)
+public class SackBench {
+
+    @Param({"1", "4", "16"})
+    int holes;
+
+    private SackScoreboard board;
+    private int next;
+
+    @Setup
+    public void setup() {
+        board = new SackScoreboard(64, 0);
+        next = 0;
+    }
+
+    /**
+     * Fills a 64-segment window, reports all but the given number of holes as
+     * selectively acknowledged, marks losses and acknowledges the window.
+     */
+    @Benchmark
+    public int scoreboard() {
+        int start = next;
+        for (int i = 0; i < 64; i++) {
+            board.sent(next++);
+        }
+        int step = 64 / holes;
+        for (int h = 0; h < holes; h++) {
+            int hole = start + h * step;
+            board.sack(hole + 1, hole + step);
+        }
+        int lost = board.markLost(3);
+        int pipe = board.pipe();
+        board.ack(next);
+        return lost + pipe;
+    }
+}
@@ -0,0 +1,112 @@
+package src.bench;
+
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import src.net.TServerSocket;
+import src.net.TSocket;
+import src.util.Log;
+import src.util.SimNet_FullDuplex;
+
+/**
+ * Exchanges header and body messages over a loss-free {@link SimNet_FullDuplex}, either
+ * concatenating them into a temporary array on send and splitting them again on
+ * receive, or gathering and scattering them straight between direct buffers and
+ * segments. Reports the time and the bytes allocated by the application threads:
+ * java -cp target/benchmarks.jar src.bench.ScatterBench [messages] [bodyBytes]
+ */
+public class ScatterBench {
+
+    /** Server port, client ports start right above it */
+    private static final int PORT = 80;
+
+    /** Message header length */
+    private static final int HEADER = 16;
+
+    public static void main(String[] args) throws InterruptedException {
+        int messages = (args.length > 0) ? Integer.parseInt(args[0]) : 20_000;
+        int body = (args.length > 1) ? Integer.parseInt(args[1]) : 1000;
+        Log.getLog().setLevel(Log.Level.OFF);
+        SimNet_FullDuplex net = new SimNet_FullDuplex();
+        HandshakeBench.BenchProtocol client = new HandshakeBench.BenchProtocol(net.getCltEnd());
+        TServerSocket server = new HandshakeBench.BenchServerSocket(
+                new HandshakeBench.BenchProtocol(net.getSrvEnd()), PORT);
+        System.out.printf("%8s %8s %8s %12s %12s%n", "mode", "messages", "ms", "sender KB", "receiver KB");
+        int port = PORT + 1;
+        for (boolean gather : new boolean[]{false, true, false, true}) {
+            TSocket sender = new HandshakeBench.BenchSocket(client, port++, PORT);
+            sender.connect();
+            TSocket receiver = server.accept();
+            long[] rcvAlloc = new long[1];
+            Thread t = new Thread(() -> rcvAlloc[0] = receive(receiver, messages, body, gather));
+            long start = System.nanoTime();
+            t.start();
+            long sndAlloc = send(sender, messages, body, gather);
+            t.join();
+            long ms = (System.nanoTime() - start) / 1_000_000;
+            System.out.printf("%8s %8d %8d %12d %12d%n", gather ? "gather" : "concat",
+                    messages, ms, sndAlloc >> 10, rcvAlloc[0] >> 10);
+        }
+        // Protocol receiver threads are not daemons
+        System.exit(0);
+    }
+
+    private static long send(TSocket sc, int messages, int body, boolean gather) {
+        long before = allocated();
+        ByteBuffer header = ByteBuffer.allocateDirect(HEADER);
+        ByteBuffer payload = ByteBuffer.allocateDirect(body);
+        byte[] h = new byte[HEADER];
+        byte[] b = new byte[body];
+        for (int i = 0; i < messages; i++) {
+            if (gather) {
+                header.clear();
+                header.putInt(0, i);
+                payload.clear();
+                sc.sendData(header, payload);
+            } else {
+                byte[] message = new byte[HEADER + body];
+                System.arraycopy(h, 0, message, 0, HEADER);
+                System.arraycopy(b, 0, message, HEADER, body);
+                sc.sendData(message, 0, message.length);
+            }
+        }
+        sc.flush();
+        return allocated() - before;
+    }
+
+    private static long receive(TSocket sc, int messages, int body, boolean gather) {
+        long before = allocated();
+        ByteBuffer header = ByteBuffer.allocateDirect(HEADER);
+        ByteBuffer payload = ByteBuffer.allocateDirect(body);
+        for (int i = 0; i < messages; i++) {
+            if (gather) {
+                header.clear();
+                payload.clear();
+                while (payload.hasRemaining()) {
+                    sc.receiveData(header, payload);
+                }
+                if (header.getInt(0) != i) {
+                    throw new IllegalStateException("Message " + i + " out of order");
+                }
+            } else {
+                byte[] message = new byte[HEADER + body];
+                int n = 0;
+                while (n < message.length) {
+                    n += sc.receiveData(message, n, message.length - n);
+                }
+                byte[] h = new byte[HEADER];
+                byte[] b = new byte[body];
+                System.arraycopy(message, 0, h, 0, HEADER);
+                System.arraycopy(message, HEADER, b, 0, body);
+            }
+        }
+        return allocated() - before;
+    }
+
+    /**
+     * Returns the bytes allocated so far by the current thread.
+     */
+    private static long allocated() {
+        return ((com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean())
+                .getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+}
@@ -0,0 +1,66 @@
+package src.bench;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import src.util.TCPSegment;
+
+/**
+ * Cost of building segments, with and without the segment pool, and of printing them.
+ */
+@State(Scope.Thread)
+public class SegmentBench {
+
+    private TCPSegment psh, ack;
+    private int seq;
+
+    @Setup
+    public void setup() {
+        psh = new TCPSegment();
+        psh.setPsh(true);
+        psh.setSourcePort(10);
+        psh.setDestinationPort(80);
+        psh.setSeqNum(7);
+        psh.setData(new byte[1460]);
+        ack = new TCPSegment();
+        ack.setAck(true);
+        ack.setSourcePort(80);
+        ack.setDestinationPort(10);
+        ack.setAckNum(8);
+        ack.setWnd(50);
+        ack.setSackNum(9);
+    }
+
+    @Benchmark
+    public TCPSegment construct() {
+        TCPSegment seg = new TCPSegment();
+        seg.setAck(true);
+        seg.setSourcePort(80);
+        seg.setDestinationPort(10);
+        seg.setAckNum(seq++);
+        return seg;
+    }
+
+    @Benchmark
+    public int obtainRelease() {
+        TCPSegment seg = TCPSegment.obtain();
+        seg.setAck(true);
+        seg.setSourcePort(80);
+        seg.setDestinationPort(10);
+        seg.setAckNum(seq++);
+        int n = seg.getAckNum();
+        seg.release();
+        return n;
+    }
+
+    @Benchmark
+    public String toStringPsh() {
+        return psh.toString();
+    }
+
+    @Benchmark
+    public String toStringAck() {
+        return ack.toString();
+    }
+}
@@ -0,0 +1,116 @@
+package src.bench;
+
+import java.util.ArrayList;
+import java.util.List;
+import src.net.TServerSocket;
+import src.net.TSocket;
+import src.util.Log;
+import src.util.SimNet_FullDuplex;
+import src.util.TSelector;
+
+/**
+ * Echo server driven by a single event-loop thread through a {@link TSelector}, with
+ * the clients driven the same way by the main thread, over a loss-free
+ * {@link SimNet_FullDuplex}:
+ * java -cp target/benchmarks.jar src.bench.SelectorBench [connections] [messageBytes]
+ */
+public class SelectorBench {
+
+    /** Server port, client ports start right above it */
+    private static final int PORT = 80;
+
+    /** Handshakes in progress at once, so that SYNs do not overflow the links */
+    private static final int CONNECTING = 32;
+
+    public static void main(String[] args) {
+        int connections = (args.length > 0) ? Integer.parseInt(args[0]) : 10_000;
+        int size = (args.length > 1) ? Integer.parseInt(args[1]) : 100;
+        Log.getLog().setLevel(Log.Level.OFF);
+        SimNet_FullDuplex net = new SimNet_FullDuplex();
+        HandshakeBench.BenchProtocol client = new HandshakeBench.BenchProtocol(net.getCltEnd());
+        TServerSocket server = new AcceptBench.BacklogServerSocket(
+                new HandshakeBench.BenchProtocol(net.getSrvEnd()), PORT, connections);
+
+        Thread loop = new Thread(() -> serve(server), "event-loop");
+        loop.setDaemon(true);
+        loop.start();
+
+        long start = System.nanoTime();
+        TSelector selector = new TSelector();
+        byte[] message = new byte[size];
+        byte[] buf = new byte[size];
+        int opened = 0;
+        while (opened < Math.min(CONNECTING, connections)) {
+            open(selector, client, opened++);
+        }
+        int done = 0;
+        List<TSelector.Key> keys = new ArrayList<>();
+        while (done < connections) {
+            keys.clear();
+            selector.select(keys);
+            for (TSelector.Key k : keys) {
+                TSocket sc = (TSocket) k.socket();
+                int[] echoed = (int[]) k.attachment();
+                if (k.isConnectable()) {
+                    sc.trySendData(message, 0, size);
+                    k.interestOps(TSelector.OP_READ);
+                    if (opened < connections) {
+                        open(selector, client, opened++);
+                    }
+                }
+                if (k.isReadable()) {
+                    int n;
+                    while ((n = sc.tryReceiveData(buf, 0, buf.length)) > 0) {
+                        echoed[0] += n;
+                    }
+                    if (echoed[0] == size) {
+                        k.cancel();
+                        done++;
+                    }
+                }
+            }
+        }
+        double secs = (System.nanoTime() - start) / 1e9;
+        System.out.printf("%d connections echoed %d bytes in %.2f s with %d threads live%n",
+                connections, size, secs, Thread.activeCount());
+        // Protocol receiver threads are not daemons
+        System.exit(0);
+    }
+
+    /**
+     * Opens the i-th client connection, registered for OP_CONNECT.
+     */
+    private static void open(TSelector selector, HandshakeBench.BenchProtocol client, int i) {
+        TSocket sc = new HandshakeBench.BenchSocket(client, PORT + 1 + i, PORT);
+        selector.register(sc, TSelector.OP_CONNECT, new int[1]);
+        sc.connect();
+    }
+
+    /**
+     * Event loop accepting connections and echoing what they send.
+     */
+    private static void serve(TServerSocket server) {
+        TSelector selector = new TSelector();
+        selector.register(server, TSelector.OP_ACCEPT, null);
+        List<TSelector.Key> keys = new ArrayList<>();
+        byte[] buf = new byte[4096];
+        while (true) {
+            keys.clear();
+            selector.select(keys);
+            for (TSelector.Key k : keys) {
+                if (k.isAcceptable()) {
+                    TSocket sc;
+                    while ((sc = server.tryAccept()) != null) {
+                        selector.register(sc, TSelector.OP_READ, null);
+                    }
+                } else if (k.isReadable()) {
+                    TSocket sc = (TSocket) k.socket();
+                    int n;
+                    while ((n = sc.tryReceiveData(buf, 0, buf.length)) > 0) {
+                        sc.trySendData(buf, 0, n);
+                    }
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,80 @@
+package src.bench;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import src.util.Const;
+import src.util.SimNet;
+import src.util.SimNetMonitor;
+import src.util.SimNetRing;
+import src.util.TCPSegment;
+import src.util.WaitStrategy;
+
+/**
+ * Link throughput with 1..N producer threads sending into one simulated network
+ * while the benchmark thread receives, as the protocol receiver thread does.
+ */
+@State(Scope.Benchmark)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class SimNetBench {
+
+    @Param({"1", "2", "4"})
+    int producers;
+
+    @Param({"monitor", "ring"})
+    String link;
+
+    /** Sent by each producer when it stops */
+    private static final TCPSegment END = new TCPSegment();
+
+    private SimNet net;
+    private Thread[] threads;
+    private volatile boolean running;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        net = link.equals("monitor")
+                ? new SimNetMonitor()
+                : new SimNetRing(Const.SIMNET_QUEUE_SIZE, producers > 1, WaitStrategy.PARK);
+        running = true;
+        threads = new Thread[producers];
+        for (int i = 0; i < producers; i++) {
+            final int port = i;
+            threads[i] = new Thread(() -> {
+                TCPSegment seg = new TCPSegment();
+                seg.setSourcePort(port);
+                while (running) {
+                    net.send(seg);
+                }
+                net.send(END);
+            });
+            threads[i].setDaemon(true);
+            threads[i].start();
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws InterruptedException {
+        running = false;
+        // Drain until every producer, possibly blocked on a full link, has stopped
+        for (int stopped = 0; stopped < producers; ) {
+            if (net.receive() == END) {
+                stopped++;
+            }
+        }
+        for (Thread t : threads) {
+            t.join();
+        }
+    }
+
+    @Benchmark
+    public TCPSegment receive() {
+        return net.receive();
+    }
+}
@@ -0,0 +1,79 @@
+package src.net;
+
+import java.util.concurrent.CountDownLatch;
+import src.util.Log;
+import src.util.SimNet;
+
+class HostClt implements Runnable {
+
+    /** First client port */
+    public final int PORT1 = 10;
+
+    /** Second client port */
+    public final int PORT2 = 20;
+
+    /** Protocol instance */
+    protected Protocol proto;
+
+    /** Logger instance */
+    private Log log;
+
+    public HostClt(SimNet net) {
+        proto = new Protocol(net);
+        log = Log.getLog();
+    }
+
+    public void run() {
+        // Delay to allow server to start:
+        try {
+            Thread.sleep(1000);
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+        CountDownLatch done = new CountDownLatch(2);
+        proto.getExecutor().execute(new Client(PORT1, done));
+        proto.getExecutor().execute(new Client(PORT2, done));
+        try {
+            done.await();
+        } catch (InterruptedException ex) {
+            ex.printStackTrace();
+        }
+        try {
+            Thread.sleep(2000);
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+        System.exit(0);
+    }
+
+    class Client implements Runnable {
+
+        /** Local port for client */
+        private final int localPort;
+
+        /** Counted down when the client has closed */
+        private final CountDownLatch done;
+
+        public Client(int port, CountDownLatch done) {
+            localPort = port;
+            this.done = done;
+        }
+
+        public void run() {
+            log.printBlue("Client started");
+
+            TSocket sc = new TSocket(proto, localPort, HostSrv.PORT);
+            sc.connect();
+            log.printBlue("Client connected with localport: " + sc.localPort);
+            try {
+                Thread.sleep(5000);
+            } catch (Exception e) {
+                e.printStackTrace();
+            }
+            log.printBlue("Client about to close from localport: " + sc.localPort);
+            sc.close();
+            log.printBlue("Client closed from localport: " + sc.localPort);
+            done.countDown();
+        }
+    }
+}
\ No newline at end of file
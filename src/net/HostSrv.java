@@ -0,0 +1,53 @@
+package src.net;
+
+import src.util.Log;
+import src.util.SimNet;
+
+class HostSrv implements Runnable {
+
+    /** Server port number */
+    public static final int PORT = 80;
+
+    /** Protocol instance */
+    protected Protocol proto;
+
+    /** Logger instance */
+    private Log log;
+
+    public HostSrv(SimNet net) {
+        proto = new Protocol(net);
+        log = Log.getLog();
+    }
+
+    @Override
+    public void run() {
+        log.printBlue("\t\t\t\t\t\t\t\tServer started");
+        TServerSocket serverSocket = new TServerSocket(proto, HostSrv.PORT);
+        for (int i = 0; i < 2; i++) {
+            TSocket sc = serverSocket.accept();
+            proto.getExecutor().execute(new Worker(sc));
+        }
+    }
+
+    class Worker implements Runnable {
+
+        /** Socket instance */
+        TSocket sc;
+
+        Worker(TSocket sc) {
+            this.sc = sc;
+        }
+
+        public void run() {
+            log.printBlue("\t\t\t\t\t\t\tWorker providing service to client with port: " + sc.remotePort);
+            try {
+                Thread.sleep(5000);
+            } catch (Exception e) {
+                e.printStackTrace();
+            }
+            log.printBlue("\t\t\t\t\t\t\tWorker about to close to client with port: " + sc.remotePort);
+            sc.close();
+            log.printBlue("\t\t\t\t\t\t\tWorker closed from client with port: " + sc.remotePort);
+        }
+    }
+}
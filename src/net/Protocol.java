@@ -1,5 +1,6 @@
 package src.net;
 
+import java.util.concurrent.Executor;
 import src.util.ProtocolBase;
 import src.util.SimNet;
 import src.util.TCPSegment;
@@ -12,6 +13,29 @@ public class Protocol extends ProtocolBase {
         super(network);
     }
 
+    /**
+     * Constructor for Protocol with a custom receive pipeline.
+     *
+     * @param network       the simulated network
+     * @param numLanes      number of worker lanes processing received segments
+     * @param laneQueueSize maximum segments queued on each lane
+     */
+    protected Protocol(SimNet network, int numLanes, int laneQueueSize) {
+        super(network, numLanes, laneQueueSize);
+    }
+
+    /**
+     * Constructor for Protocol running its threads on the given executor.
+     *
+     * @param network       the simulated network
+     * @param numLanes      number of worker lanes processing received segments
+     * @param laneQueueSize maximum segments queued on each lane
+     * @param executor      executor starting one thread per task
+     */
+    protected Protocol(SimNet network, int numLanes, int laneQueueSize, Executor executor) {
+        super(network, numLanes, laneQueueSize, executor);
+    }
+
     /**
      * Process incoming TCP segment at IP layer.
      *
@@ -34,21 +58,10 @@ public class Protocol extends ProtocolBase {
      * @return the matching TSocket, or null if none found
      */
     protected TSocketBase getMatchingTSocket(int localPort, int remotePort) {
-        lock.lock();
-        try {
-            for (TSocketBase sc : activeSockets) {
-                if (sc.localPort == localPort && sc.remotePort == remotePort) {
-                    return sc;
-                }
-            }
-            for (TSocketBase sc : listenSockets) {
-                if (sc.localPort == localPort) {
-                    return sc;
-                }
-            }
-            return null;
-        } finally {
-            lock.unlock();
+        TSocketBase sc = activeSockets.get(connectionKey(localPort, remotePort));
+        if (sc == null) {
+            sc = listenSockets.get(localPort);
         }
+        return sc;
     }
 }
\ No newline at end of file
@@ -1,12 +1,28 @@
 package src.net;
 
+import java.security.SecureRandom;
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
 import src.util.CircularQueue;
 import src.util.Const;
+import src.util.Log;
+import src.util.LongHashMap;
+import src.util.SackScoreboard;
 import src.util.TCPSegment;
+import src.util.TSelector;
 import src.util.TSocketBase;
 
 /**
  * Represents a server socket extending the base socket class.
+ * <p>
+ * A SYN only creates a small half-open entry, answered with a SYN-ACK; the full
+ * {@link TSocket} is allocated once the client's ACK completes the handshake. The
+ * half-open table is bounded: when it is full, further SYNs are answered with a SYN
+ * cookie, an initial sequence number from which the final ACK alone can be validated,
+ * so no state is kept for them at all. Entries whose SYN-ACK is not answered after
+ * {@link Const#SYN_RETRIES} retransmissions are evicted.
  */
 public class TServerSocket extends TSocketBase {
 
@@ -19,6 +35,36 @@ public class TServerSocket extends TSocketBase {
     /** Queue for incoming connections */
     protected CircularQueue<TSocket> acceptQueue;
 
+    /** Capacity of the accept queue */
+    protected int backlog;
+
+    /** Completed handshakes dropped because the accept queue was full */
+    protected long acceptOverflows;
+
+    /** Pending asynchronous accepts, in call order */
+    protected ArrayDeque<CompletableFuture<TSocket>> acceptFutures;
+
+    /** Number of pending asynchronous accepts, so the receive path skips them cheaply */
+    protected volatile int asyncPending;
+
+    /** Half-open connections, keyed by remote port */
+    protected LongHashMap<HalfOpen> synTable;
+
+    /** Half-open connections packed at the front, for the retransmission sweep */
+    protected HalfOpen[] synEntries;
+
+    /** Number of half-open connections */
+    protected int synCount;
+
+    /** Secret keying the SYN cookies */
+    protected final long cookieSecret;
+
+    /** SYN cookies sent and validated, and half-open connections evicted */
+    protected long synCookiesSent, synCookiesAccepted, synEvicted;
+
+    /** Lifetime of a SYN cookie time slot (ns); a cookie is valid in its slot and the next */
+    protected static final long COOKIE_PERIOD = 64_000_000_000L;
+
     /** FSM states */
     protected static final int CLOSED = 0,
             LISTEN = 1,
@@ -34,9 +80,27 @@ public class TServerSocket extends TSocketBase {
      * @param localPort the local port number
      */
     protected TServerSocket(Protocol p, int localPort) {
+        this(p, localPort, Const.LISTEN_QUEUE_SIZE);
+    }
+
+    /**
+     * Constructor initializing with protocol, local port and accept queue capacity.
+     *
+     * @param p         the protocol instance
+     * @param localPort the local port number
+     * @param backlog   maximum established connections waiting to be accepted
+     * @throws IllegalArgumentException if backlog is not positive
+     */
+    protected TServerSocket(Protocol p, int localPort, int backlog) {
         super(p.getNetwork());
+        if (backlog < 1) {
+            throw new IllegalArgumentException("Backlog must be positive");
+        }
         proto = p;
         this.localPort = localPort;
+        this.backlog = backlog;
+        acceptFutures = new ArrayDeque<>();
+        cookieSecret = new SecureRandom().nextLong();
         state = CLOSED;
         p.addListenTSocket(this);
         listen();
@@ -50,7 +114,10 @@ public class TServerSocket extends TSocketBase {
         lock.lock();
         try {
             if (state == CLOSED) {
-                acceptQueue = new CircularQueue<>(Const.LISTEN_QUEUE_SIZE);
+                acceptQueue = new CircularQueue<>(backlog);
+                synTable = new LongHashMap<>(Const.SYN_BACKLOG_SIZE);
+                synEntries = new HalfOpen[Const.SYN_BACKLOG_SIZE];
+                synCount = 0;
                 state = LISTEN;
                 proto.addListenTSocket(this);
             }
@@ -77,6 +144,172 @@ public class TServerSocket extends TSocketBase {
         }
     }
 
+    /**
+     * Accepts an incoming connection if one is pending, without waiting.
+     *
+     * @return the accepted socket, or null if none is pending
+     */
+    public TSocket tryAccept() {
+        lock.lock();
+        try {
+            return acceptQueue.empty() ? null : acceptQueue.get();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Accepts an incoming connection, waiting at most the given time for one.
+     *
+     * @param timeoutMs maximum time to wait in milliseconds
+     * @return the accepted socket, or null if the time elapsed or the thread was interrupted
+     */
+    public TSocket accept(long timeoutMs) {
+        lock.lock();
+        try {
+            long nanos = TimeUnit.MILLISECONDS.toNanos(timeoutMs);
+            while (acceptQueue.empty()) {
+                if (nanos <= 0) {
+                    return null;
+                }
+                nanos = appCV.awaitNanos(nanos);
+            }
+            return acceptQueue.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns a future completed with the next connection accepted: at once if one is
+     * pending, otherwise from the receive path when a handshake completes. Pending
+     * futures are completed in call order.
+     *
+     * @return the future of the accepted socket
+     */
+    public CompletableFuture<TSocket> acceptAsync() {
+        lock.lock();
+        try {
+            if (!acceptQueue.empty() && acceptFutures.isEmpty()) {
+                return CompletableFuture.completedFuture(acceptQueue.get());
+            }
+            CompletableFuture<TSocket> f = new CompletableFuture<>();
+            acceptFutures.add(f);
+            asyncPending++;
+            return f;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Hands queued connections to the pending asynchronous accepts, completing them
+     * once the lock is released. A connection whose future was cancelled meanwhile
+     * goes back to the accept queue.
+     */
+    protected void completeAccepts() {
+        while (asyncPending > 0) {
+            CompletableFuture<TSocket> f;
+            TSocket sc;
+            lock.lock();
+            try {
+                if (acceptFutures.isEmpty() || acceptQueue.empty()) {
+                    return;
+                }
+                f = acceptFutures.poll();
+                asyncPending--;
+                if (f.isDone()) {
+                    continue;
+                }
+                sc = acceptQueue.get();
+            } finally {
+                lock.unlock();
+            }
+            if (!f.complete(sc)) {
+                lock.lock();
+                try {
+                    if (acceptQueue.full()) {
+                        acceptOverflows++;
+                    } else {
+                        acceptQueue.put(sc);
+                    }
+                } finally {
+                    lock.unlock();
+                }
+            }
+        }
+    }
+
+    /**
+     * Accepts up to maxN pending connections under a single lock acquisition, without
+     * waiting. Combined with {@link #accept(long)} when nothing is pending, it lets an
+     * acceptor drain a burst of connections in a few lock round trips.
+     *
+     * @param maxN maximum number of connections to accept
+     * @param into collection receiving the accepted sockets
+     * @return the number of sockets added
+     * @throws IllegalArgumentException if maxN is not positive
+     * @throws NullPointerException     if into is null
+     */
+    public int acceptBatch(int maxN, Collection<? super TSocket> into) {
+        if (maxN < 1) {
+            throw new IllegalArgumentException("Batch size must be positive");
+        }
+        if (into == null) {
+            throw new NullPointerException("Collection cannot be null");
+        }
+        lock.lock();
+        try {
+            int n = 0;
+            while (n < maxN && !acceptQueue.empty()) {
+                into.add(acceptQueue.get());
+                n++;
+            }
+            return n;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Reports pending connections to accept.
+     */
+    @Override
+    protected int readyOps() {
+        lock.lock();
+        try {
+            return acceptQueue.empty() ? 0 : TSelector.OP_ACCEPT;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns the capacity of the accept queue.
+     *
+     * @return maximum established connections waiting to be accepted
+     */
+    public int getBacklog() {
+        return backlog;
+    }
+
+    /**
+     * Returns the number of established connections waiting to be accepted.
+     *
+     * @return pending connections
+     */
+    public int getPending() {
+        lock.lock();
+        try {
+            return acceptQueue.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
     /**
      * Processes a received TCP segment.
      *
@@ -88,13 +321,10 @@ public class TServerSocket extends TSocketBase {
             printRcvSeg(rseg);
             switch (state) {
                 case LISTEN:
-                    if (rseg.isSyn() && !acceptQueue.full()) {
-                        TSocket sc = new TSocket(proto, localPort, rseg.getSourcePort());
-                        sc.state = ESTABLISHED;
-                        proto.addActiveTSocket(sc);
-                        acceptQueue.put(sc);
-                        appCV.signal();
-                        sc.sendSyn(false);
+                    if (rseg.isSyn()) {
+                        processSyn(rseg);
+                    } else if (rseg.isAck()) {
+                        processHandshakeAck(rseg);
                     }
                     break;
                 case SYN_SENT:
@@ -105,6 +335,305 @@ public class TServerSocket extends TSocketBase {
         } finally {
             lock.unlock();
         }
+        completeAccepts();
+    }
+
+    /**
+     * Answers a SYN with a SYN-ACK. A new connection is recorded in the half-open
+     * table if there is room, otherwise nothing is kept and the SYN-ACK carries a
+     * cookie. A retransmitted SYN of a half-open connection means its SYN-ACK was
+     * lost, so it is sent again.
+     *
+     * @param rseg the received SYN
+     */
+    protected void processSyn(TCPSegment rseg) {
+        int port = rseg.getSourcePort();
+        HalfOpen h = synTable.get(port);
+        if (h != null) {
+            h.sentAt = System.nanoTime();
+            sendSynAck(port, h.iss, h.peerIss, true);
+            return;
+        }
+        int iss = cookie(port, rseg.getSeqNum(), cookieSlot());
+        if (synCount < synEntries.length) {
+            h = new HalfOpen(port, iss, rseg.getSeqNum());
+            h.sentAt = System.nanoTime();
+            h.index = synCount;
+            synEntries[synCount++] = h;
+            synTable.put(port, h);
+            if (synCount == 1) {
+                timerService.schedule(sndRtTimer, Const.SND_RTO);
+            }
+        } else {
+            synCookiesSent++;
+        }
+        sendSynAck(port, iss, rseg.getSeqNum(), false);
+    }
+
+    /**
+     * Completes the handshake of a connection not yet established: the segment must
+     * acknowledge the SYN-ACK of a half-open entry, or carry a valid cookie. Only then
+     * is the socket allocated and queued for accept, after which it processes the
+     * segment itself, since the final ACK may have been lost and this be the first
+     * data segment. The segment is dropped while the accept queue is full; the entry
+     * is kept and the peer retransmits.
+     *
+     * @param rseg the received segment, carrying an ACK
+     */
+    protected void processHandshakeAck(TCPSegment rseg) {
+        int port = rseg.getSourcePort();
+        int iss = rseg.getAckNum();
+        HalfOpen h = synTable.get(port);
+        int peerIss;
+        if (h != null) {
+            if (iss != h.iss) {
+                return;
+            }
+            peerIss = h.peerIss;
+        } else if (checkCookie(port, rseg.getSeqNum(), iss)) {
+            peerIss = rseg.getSeqNum();
+        } else {
+            return;
+        }
+        if (acceptQueue.full()) {
+            acceptOverflows++;
+            return;
+        }
+        if (h != null) {
+            removeHalfOpen(h);
+        } else {
+            synCookiesAccepted++;
+        }
+        TSocket sc = new TSocket(proto, localPort, port);
+        sc.state = ESTABLISHED;
+        sc.sndIss = sc.sndUna = sc.sndNxt = sc.sndRtxNxt = iss;
+        sc.sndScoreboard = new SackScoreboard(sc.sndWnd, iss);
+        sc.rcvNxt = peerIss;
+        sc.sndRcvWnd = rseg.getWnd();
+        acceptQueue.put(sc);
+        appCV.signal();
+        ready(TSelector.OP_ACCEPT);
+        sc.processReceivedSegment(rseg);
+    }
+
+    /**
+     * Retransmits the SYN-ACK of every half-open connection whose timeout expired,
+     * doubling the timeout each time, and evicts those retransmitted SYN_RETRIES times.
+     */
+    @Override
+    protected void timeout() {
+        lock.lock();
+        try {
+            long now = System.nanoTime();
+            // Backwards, as removal moves the last entry into the freed slot
+            for (int i = synCount - 1; i >= 0; i--) {
+                HalfOpen h = synEntries[i];
+                if (now - h.sentAt < ((long) Const.SND_RTO << h.retries) * 1_000_000L) {
+                    continue;
+                }
+                if (h.retries == Const.SYN_RETRIES) {
+                    removeHalfOpen(h);
+                    synEvicted++;
+                } else {
+                    h.retries++;
+                    h.sentAt = now;
+                    sendSynAck(h.remotePort, h.iss, h.peerIss, true);
+                }
+            }
+            if (synCount > 0) {
+                timerService.schedule(sndRtTimer, Const.SND_RTO);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Removes a half-open connection, moving the last entry into its slot.
+     *
+     * @param h the entry to remove
+     */
+    protected void removeHalfOpen(HalfOpen h) {
+        synTable.remove(h.remotePort, h);
+        HalfOpen last = synEntries[--synCount];
+        synEntries[h.index] = last;
+        last.index = h.index;
+        synEntries[synCount] = null;
+        if (synCount == 0) {
+            timerService.cancel(sndRtTimer);
+        }
+    }
+
+    /**
+     * Sends a SYN-ACK, advertising the receive queue of the socket to be created.
+     * The SYN-ACK is dropped if the network is full rather than waited for: a storm of
+     * SYNs could otherwise fill both directions, with this receiver waiting for the
+     * peer's and the peer's waiting for the final ACKs this one should drain. The
+     * half-open entry or the client's SYN retransmission recovers it.
+     *
+     * @param remotePort the client port
+     * @param iss        our initial sequence number
+     * @param peerIss    the client's initial sequence number, acknowledged
+     * @param ret        whether the segment is a retransmission
+     */
+    protected void sendSynAck(int remotePort, int iss, int peerIss, boolean ret) {
+        TCPSegment syn = TCPSegment.obtain();
+        syn.setSyn(true);
+        syn.setAck(true);
+        syn.setSourcePort(localPort);
+        syn.setDestinationPort(remotePort);
+        syn.setSeqNum(iss);
+        syn.setAckNum(peerIss);
+        syn.setWnd(Const.RCV_QUEUE_SIZE);
+        if (ret) {
+            log.print(Log.Level.DEBUG, Log.GREEN, "\t\t\t\t\t\t\t\t sent: ", syn);
+        } else {
+            printSndSeg(syn);
+        }
+        if (!network.trySend(syn)) {
+            syn.release();
+        }
+    }
+
+    /**
+     * Computes the SYN cookie used as initial sequence number: the two low bits of
+     * the time slot, followed by 28 bits of a keyed hash of the connection, the
+     * client's initial sequence number and the slot. Cookies stay below 2^30, so the
+     * sequence numbers of the connection remain positive, as the sockets index their
+     * windows by sequence number modulo their size.
+     *
+     * @param remotePort the client port
+     * @param peerIss    the client's initial sequence number
+     * @param slot       the time slot
+     * @return the cookie
+     */
+    protected int cookie(int remotePort, int peerIss, long slot) {
+        long h = cookieSecret ^ LongHashMap.pack(localPort, remotePort);
+        h = (h ^ peerIss) * 0x9E3779B97F4A7C15L;
+        h = (h ^ (h >>> 29) ^ slot) * 0xBF58476D1CE4E5B9L;
+        h ^= h >>> 32;
+        return (int) (slot & 3) << 28 | ((int) h & 0x0FFFFFFF);
+    }
+
+    /**
+     * Tells whether an acknowledgement number is a cookie issued to the connection in
+     * the current or the previous time slot.
+     *
+     * @param remotePort the client port
+     * @param peerIss    the client's initial sequence number
+     * @param ack        the acknowledgement number received
+     * @return true if the cookie is valid
+     */
+    protected boolean checkCookie(int remotePort, int peerIss, int ack) {
+        long slot = cookieSlot();
+        return cookie(remotePort, peerIss, slot) == ack || cookie(remotePort, peerIss, slot - 1) == ack;
+    }
+
+    /**
+     * Returns the current SYN cookie time slot.
+     *
+     * @return the time slot
+     */
+    protected static long cookieSlot() {
+        return System.nanoTime() / COOKIE_PERIOD;
+    }
+
+    /**
+     * Returns the number of half-open connections.
+     *
+     * @return connections waiting for the final ACK of the handshake
+     */
+    public int getHalfOpen() {
+        lock.lock();
+        try {
+            return synCount;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns the number of SYN cookies sent because the half-open table was full.
+     *
+     * @return the number of cookies sent
+     */
+    public long getSynCookiesSent() {
+        lock.lock();
+        try {
+            return synCookiesSent;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns the number of connections established from a SYN cookie.
+     *
+     * @return the number of cookies validated
+     */
+    public long getSynCookiesAccepted() {
+        lock.lock();
+        try {
+            return synCookiesAccepted;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns the number of completed handshakes dropped because the accept queue was
+     * full. The peer retransmits, so a connection may be counted more than once.
+     *
+     * @return the number of accept queue overflows
+     */
+    public long getAcceptOverflows() {
+        lock.lock();
+        try {
+            return acceptOverflows;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns the number of half-open connections evicted unanswered.
+     *
+     * @return the number of evicted connections
+     */
+    public long getSynEvicted() {
+        lock.lock();
+        try {
+            return synEvicted;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Connection waiting for the final ACK of its handshake.
+     */
+    protected static class HalfOpen {
+
+        /** Client port */
+        final int remotePort;
+
+        /** Our initial sequence number, and the client's */
+        final int iss, peerIss;
+
+        /** Slot in synEntries */
+        int index;
+
+        /** SYN-ACK retransmissions so far */
+        int retries;
+
+        /** Send time (ns) of the last SYN-ACK */
+        long sentAt;
+
+        HalfOpen(int remotePort, int iss, int peerIss) {
+            this.remotePort = remotePort;
+            this.iss = iss;
+            this.peerIss = peerIss;
+        }
     }
 
     /**
@@ -113,7 +642,7 @@ public class TServerSocket extends TSocketBase {
      * @param rseg the received TCP segment
      */
     protected void printRcvSeg(TCPSegment rseg) {
-        log.printWhite("\t\t\t\t\t\t\t\t rcvd: " + rseg);
+        log.print(Log.Level.DEBUG, Log.WHITE, "\t\t\t\t\t\t\t\t rcvd: ", rseg);
     }
 
     /**
@@ -122,6 +651,6 @@ public class TServerSocket extends TSocketBase {
      * @param rseg the sent TCP segment
      */
     protected void printSndSeg(TCPSegment rseg) {
-        log.printWhite("\t\t\t\t\t\t\t\t sent: " + rseg);
+        log.print(Log.Level.DEBUG, Log.WHITE, "\t\t\t\t\t\t\t\t sent: ", rseg);
     }
 }
\ No newline at end of file
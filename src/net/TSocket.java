@@ -1,9 +1,25 @@
 package src.net;
 
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayDeque;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Flow;
+import src.util.BufferPool;
 import src.util.CircularQueue;
+import src.util.CongestionControl;
+import src.util.CongestionControl_NewReno;
 import src.util.Const;
+import src.util.Log;
+import src.util.PooledBuffer;
+import src.util.SackScoreboard;
 import src.util.TCPSegment;
+import src.util.TSelector;
 import src.util.TSocketBase;
+import src.util.Threads;
+import src.util.TimerWheel;
 
 /**
  * Represents a client or server socket extending the base socket class.
@@ -30,45 +46,1373 @@ public class TSocket extends TSocketBase {
             FIN_WAIT = 4,
             CLOSE_WAIT = 5;
 
+    /** Data transfer modes */
+    public static final int GO_BACK_N = 0,
+            SELECTIVE_REPEAT = 1;
+
+    /** Data transfer mode, GO_BACK_N or SELECTIVE_REPEAT */
+    protected int mode;
+
+    /** Maximum segment size in bytes, derived from the network MTU */
+    protected int sndMSS;
+
+    /** Pool of payload buffers holding at least sndMSS bytes */
+    protected BufferPool sndPool;
+
+    /** Partial segment being filled by the application, or null, and its length */
+    protected PooledBuffer sndBuf;
+    protected int sndBufLen;
+
+    /** Whether partial segments are sent at once instead of following Nagle's algorithm */
+    protected boolean sndNoDelay;
+
+    /** Whether partial segments are held until filled or flushed */
+    protected boolean sndCork;
+
+    /** Send window in segments */
+    protected int sndWnd;
+
+    /** Initial sequence number, carried by the SYN and used by the first data segment */
+    protected int sndIss;
+
+    /** Sequence number of the oldest unacknowledged segment */
+    protected int sndUna;
+
+    /** Sequence number of the next segment to send */
+    protected int sndNxt;
+
+    /** Sequence number of the next segment to retransmit after a timeout, sndNxt when none */
+    protected int sndRtxNxt;
+
+    /** Congestion control algorithm limiting the segments in flight */
+    protected CongestionControl cc;
+
+    /** Whether duplicate ACKs trigger fast retransmit and fast recovery */
+    protected boolean sndFastRetransmit;
+
+    /** Consecutive duplicate ACKs received */
+    protected int sndDupAcks;
+
+    /** Losses repaired after a retransmission timeout, and by fast retransmit */
+    protected long timeoutRecoveries, fastRecoveries;
+
+    /** Receive window last advertised by the peer, in segments from sndUna */
+    protected int sndRcvWnd;
+
+    /** Sequence and acknowledgement numbers of the segment that last updated sndRcvWnd */
+    protected int sndWl1, sndWl2;
+
+    /** Persist timer probing a zero receive window, armed flag and backoff steps */
+    protected TimerWheel.Handle sndPersistTimer;
+    protected boolean sndPersistArmed;
+    protected int sndPersistBackoff;
+
+    /** Sent segments waiting for acknowledgement, in sequence order */
+    protected CircularQueue<TCPSegment> sndRtQueue;
+
+    /** Segments the peer selectively acknowledged or that are deemed lost */
+    protected SackScoreboard sndScoreboard;
+
+    /** Send time (ns) of each unacknowledged segment, indexed by sequence number modulo the window */
+    protected long[] sndSentAt;
+
+    /** Flags of segments outstanding at a timeout, indexed like sndSentAt; they give no RTT sample */
+    protected boolean[] sndRetransmitted;
+
+    /** Send time (ns) of the SYN, and whether it was retransmitted */
+    protected long synSentAt;
+    protected boolean synRetransmitted;
+
+    /** Whether the FIN sent awaits acknowledgement, and its retransmissions so far */
+    protected boolean sndFinPending;
+    protected int sndFinRetries;
+
+    /** Sequence number of the next in-order segment expected */
+    protected int rcvNxt;
+
+    /** In-order segments waiting to be read by the application */
+    protected CircularQueue<TCPSegment> rcvQueue;
+
+    /** Bytes of the head segment of rcvQueue already read by the application */
+    protected int rcvSegConsumedBytes;
+
+    /** Receive window advertised in the last segment sent, in segments */
+    protected int rcvAdvWnd;
+
+    /** Delayed ACK timeout (ms), 0 when every segment is acknowledged at once */
+    protected long rcvAckDelay;
+
+    /** In-order segments received and not acknowledged yet */
+    protected int rcvAckPending;
+
+    /** Timer sending the ACK of a lone in-order segment */
+    protected TimerWheel.Handle rcvAckTimer;
+
+    /** ACK segments sent, and ACKs avoided by delaying, coalescing or piggybacking */
+    protected long acksSent, acksSaved;
+
+    /** Segments sent by application threads while the link was full, in order */
+    protected ArrayDeque<TCPSegment> sndOut;
+
+    /** Number of segments in sndOut, read without the lock */
+    protected volatile int sndOutCount;
+
+    /** Whether an application thread is sending the segments of sndOut */
+    protected boolean sndOutBusy;
+
+    /** Segments dropped because the link had no room for them on a thread of the stack */
+    protected long linkDrops;
+
+    /** Out-of-order segments held in selective repeat mode, indexed by sequence number */
+    protected TCPSegment[] rcvOutOfOrder;
+
+    /** Number of segments held in rcvOutOfOrder */
+    protected int rcvOutOfOrderCount;
+
+    /** Pending asynchronous connect, receive and send, completed from the receive path */
+    protected CompletableFuture<TSocket> connectFuture;
+    protected CompletableFuture<Integer> rcvFuture, sndFuture;
+
+    /** Buffers of the pending asynchronous receive and send */
+    protected ByteBuffer rcvFutureBuf, sndFutureBuf;
+
+    /** Bytes the pending asynchronous send completes with */
+    protected int sndFutureLen;
+
+    /** Number of pending asynchronous operations, so the receive path skips them cheaply */
+    protected volatile int asyncPending;
+
+    /** Subscription of the subscriber to the received data, or null */
+    protected volatile RcvSubscription rcvSubscription;
+
+    /**
+     * Constructor initializing with protocol, local port, and remote port.
+     *
+     * @param p          the protocol instance
+     * @param localPort  the local port number
+     * @param remotePort the remote port number
+     */
+    protected TSocket(Protocol p, int localPort, int remotePort) {
+        super(p.getNetwork());
+        proto = p;
+        this.localPort = localPort;
+        this.remotePort = remotePort;
+        state = CLOSED;
+        mode = GO_BACK_N;
+        sndMSS = network.getMTU() - Const.IP_HEADER - Const.TCP_HEADER;
+        sndWnd = Const.SND_WND;
+        sndPool = (sndMSS <= BufferPool.getDefault().getBufferSize())
+                ? BufferPool.getDefault() : new BufferPool(sndMSS, sndWnd);
+        cc = new CongestionControl_NewReno();
+        sndFastRetransmit = true;
+        sndRcvWnd = Const.RCV_QUEUE_SIZE;
+        sndPersistTimer = timerService.newHandle(this::persist);
+        rcvAckDelay = Const.ACK_DELAY;
+        rcvAckTimer = timerService.newHandle(this::ackTimeout);
+        sndRtQueue = new CircularQueue<>(sndWnd);
+        sndScoreboard = new SackScoreboard(sndWnd, 0);
+        sndSentAt = new long[sndWnd];
+        sndRetransmitted = new boolean[sndWnd];
+        rcvQueue = new CircularQueue<>(Const.RCV_QUEUE_SIZE);
+        sndOut = new ArrayDeque<>();
+        rcvOutOfOrder = new TCPSegment[Const.RCV_QUEUE_SIZE];
+        p.addActiveTSocket(this);
+    }
+
+    /**
+     * Selects the data transfer mode. Must be called before any data is sent.
+     *
+     * @param mode GO_BACK_N or SELECTIVE_REPEAT
+     */
+    public void setTransferMode(int mode) {
+        if (mode != GO_BACK_N && mode != SELECTIVE_REPEAT) {
+            throw new IllegalArgumentException("Unknown transfer mode: " + mode);
+        }
+        lock.lock();
+        try {
+            this.mode = mode;
+        } finally {
+            unlock();
+        }
+    }
+
+    /**
+     * Sets the send window. Must be called while no data is in flight.
+     *
+     * @param segments maximum number of unacknowledged segments
+     */
+    public void setSendWindow(int segments) {
+        if (segments < 1) {
+            throw new IllegalArgumentException("Send window must be positive");
+        }
+        lock.lock();
+        try {
+            if (!sndRtQueue.empty()) {
+                throw new IllegalStateException("Data in flight");
+            }
+            sndWnd = segments;
+            sndRtQueue = new CircularQueue<>(segments);
+            sndScoreboard = new SackScoreboard(segments, sndNxt);
+            sndSentAt = new long[segments];
+            sndRetransmitted = new boolean[segments];
+        } finally {
+            unlock();
+        }
+    }
+
+    /**
+     * Enables or disables Nagle's algorithm. With no delay, a partial segment is sent
+     * as soon as the windows allow instead of waiting for the data in flight to be
+     * acknowledged.
+     *
+     * @param noDelay true to disable Nagle's algorithm
+     */
+    public void setNoDelay(boolean noDelay) {
+        lock.lock();
+        try {
+            sndNoDelay = noDelay;
+            pushPending();
+        } finally {
+            unlock();
+        }
+    }
+
+    /**
+     * Corks or uncorks the socket. While corked only full segments are sent, whatever
+     * the no delay option, so that a message written in pieces leaves in as few
+     * segments as possible. Uncorking sends any partial segment held.
+     *
+     * @param cork true to hold partial segments
+     */
+    public void setCork(boolean cork) {
+        lock.lock();
+        try {
+            sndCork = cork;
+            pushPending();
+        } finally {
+            unlock();
+        }
+    }
+
+    /**
+     * Retrieves the maximum segment size.
+     *
+     * @return the maximum payload bytes per segment
+     */
+    public int getMSS() {
+        return sndMSS;
+    }
+
+    /**
+     * Sets the delayed ACK timeout. In-order data is then acknowledged every second
+     * segment or when the timeout expires, whichever comes first.
+     *
+     * @param ms delay in milliseconds, 0 to acknowledge every segment at once
+     */
+    public void setAckDelay(long ms) {
+        if (ms < 0) {
+            throw new IllegalArgumentException("ACK delay cannot be negative");
+        }
+        lock.lock();
+        try {
+            rcvAckDelay = ms;
+        } finally {
+            unlock();
+        }
+    }
+
+    /**
+     * Retrieves the number of ACK segments sent.
+     *
+     * @return the number of pure ACK segments sent
+     */
+    public long getAcksSent() {
+        lock.lock();
+        try {
+            return acksSent;
+        } finally {
+            unlock();
+        }
+    }
+
+    /**
+     * Retrieves the number of ACK segments saved, i.e. data segments that did not get
+     * an ACK of their own because it was delayed, coalesced or piggybacked on data.
+     *
+     * @return the number of ACK segments saved
+     */
+    public long getAcksSaved() {
+        lock.lock();
+        try {
+            return acksSaved;
+        } finally {
+            unlock();
+        }
+    }
+
+    /**
+     * Retrieves the number of segments dropped because the link was full when a
+     * thread of the stack sent them.
+     *
+     * @return the number of segments dropped locally
+     */
+    public long getLinkDrops() {
+        lock.lock();
+        try {
+            return linkDrops;
+        } finally {
+            unlock();
+        }
+    }
+
+    /**
+     * Selects the congestion control algorithm. Must be called while no data is in flight.
+     *
+     * @param cc the algorithm, used by this socket only
+     */
+    public void setCongestionControl(CongestionControl cc) {
+        if (cc == null) {
+            throw new NullPointerException("Congestion control cannot be null");
+        }
+        lock.lock();
+        try {
+            if (!sndRtQueue.empty()) {
+                throw new IllegalStateException("Data in flight");
+            }
+            this.cc = cc;
+        } finally {
+            unlock();
+        }
+    }
+
+    /**
+     * Enables or disables fast retransmit. When disabled, losses are only repaired
+     * after a retransmission timeout.
+     *
+     * @param enabled true to retransmit on duplicate ACKs
+     */
+    public void setFastRetransmit(boolean enabled) {
+        lock.lock();
+        try {
+            sndFastRetransmit = enabled;
+        } finally {
+            unlock();
+        }
+    }
+
+    /**
+     * Retrieves the number of losses repaired after a retransmission timeout.
+     *
+     * @return the number of retransmission timeouts with data outstanding
+     */
+    public long getTimeoutRecoveries() {
+        lock.lock();
+        try {
+            return timeoutRecoveries;
+        } finally {
+            unlock();
+        }
+    }
+
+    /**
+     * Retrieves the number of losses repaired by fast retransmit, without a timeout.
+     *
+     * @return the number of fast recoveries entered
+     */
+    public long getFastRecoveries() {
+        lock.lock();
+        try {
+            return fastRecoveries;
+        } finally {
+            unlock();
+        }
+    }
+
+    /**
+     * Retrieves the congestion control algorithm.
+     *
+     * @return the congestion control algorithm of this socket
+     */
+    public CongestionControl getCongestionControl() {
+        return cc;
+    }
+
+    /**
+     * Initiates a connection to a remote socket.
+     */
+    @Override
+    public void connect() {
+        lock.lock();
+        try {
+            client = true;
+            proto.addActiveTSocket(this);
+            state = SYN_SENT;
+            synSentAt = System.nanoTime();
+            synRetransmitted = false;
+            sendSyn(false);
+            startRTO();
+        } finally {
+            unlock();
+        }
+    }
+
+    /**
+     * Sends data, coalescing it into segments of MSS bytes.
+     * Blocks while the connection is being established, or while a full segment is
+     * ready and the send window, bounded by the congestion window, is full or the
+     * peer advertises no room for more. A trailing partial segment is held following
+     * Nagle's algorithm: it is sent once nothing is left in flight, unless it gets
+     * filled by later writes first.
+     *
+     * @param data   the data to send
+     * @param offset the offset in the data array
+     * @param length the length of data to send
+     */
+    @Override
+    public void sendData(byte[] data, int offset, int length) {
+        lock.lock();
+        try {
+            while (state == SYN_SENT) {
+                awaitEvent();
+            }
+            if (state != ESTABLISHED && state != CLOSE_WAIT) {
+                throw new IllegalStateException("Connection not established");
+            }
+            putData(ByteBuffer.wrap(data, offset, length));
+            pushPending();
+        } finally {
+            unlock();
+        }
+    }
+
+    /**
+     * Sends the remaining data of the buffers, heap or direct, in order, gathering it
+     * straight into segments as {@link #sendData(byte[], int, int)} does with an array,
+     * so that a header and a body need not be concatenated first. The positions of
+     * the buffers are advanced past the data sent.
+     *
+     * @param srcs the buffers to send from
+     * @return the number of bytes sent
+     */
+    @Override
+    public long sendData(ByteBuffer... srcs) {
+        lock.lock();
+        try {
+            while (state == SYN_SENT) {
+                awaitEvent();
+            }
+            if (state != ESTABLISHED && state != CLOSE_WAIT) {
+                throw new IllegalStateException("Connection not established");
+            }
+            long sent = 0;
+            for (ByteBuffer src : srcs) {
+                sent += putData(src);
+            }
+            pushPending();
+            return sent;
+        } finally {
+            unlock();
+        }
+    }
+
+    /**
+     * Sends a region of a file without copying it: the region is memory-mapped and
+     * every segment carries a read-only slice of the mapping as its payload, which a
+     * retransmission sends again as is. Blocks like {@link #sendData(byte[], int, int)}
+     * while the windows are full, after sending the data held by earlier writes.
+     * The region is clipped to the end of the file, and mapped in pieces of
+     * {@link Const#TRANSFER_MAP_SIZE} bytes without holding the lock.
+     *
+     * @param src      the file to send from
+     * @param position position of the region in the file
+     * @param count    length of the region
+     * @return the number of bytes sent
+     * @throws IOException if the file cannot be mapped
+     */
+    public long transferFrom(FileChannel src, long position, long count) throws IOException {
+        if (src == null) {
+            throw new NullPointerException("File channel cannot be null");
+        }
+        if (position < 0 || count < 0) {
+            throw new IllegalArgumentException("Negative position or count");
+        }
+        count = Math.max(0, Math.min(count, src.size() - position));
+        lock.lock();
+        try {
+            while (state == SYN_SENT) {
+                awaitEvent();
+            }
+            if (state != ESTABLISHED && state != CLOSE_WAIT) {
+                throw new IllegalStateException("Connection not established");
+            }
+            flush();
+        } finally {
+            unlock();
+        }
+        long sent = 0;
+        while (sent < count) {
+            int size = (int) Math.min(count - sent, Const.TRANSFER_MAP_SIZE);
+            // Mapping is a file system call, the receive path must not wait for the lock meanwhile
+            MappedByteBuffer map = src.map(FileChannel.MapMode.READ_ONLY, position + sent, size);
+            lock.lock();
+            try {
+                for (int off = 0; off < size; ) {
+                    if (state != ESTABLISHED && state != CLOSE_WAIT) {
+                        return sent;
+                    }
+                    if (!canSend()) {
+                        awaitSendRoom();
+                        continue;
+                    }
+                    int len = Math.min(sndMSS, size - off);
+                    TCPSegment seg = TCPSegment.obtain();
+                    seg.setData(map.slice(off, len));
+                    sendSegment(seg);
+                    off += len;
+                    sent += len;
+                }
+            } finally {
+                unlock();
+            }
+        }
+        return sent;
+    }
+
+    /**
+     * Copies the data of the buffer into segments, sending every segment filled and
+     * blocking while the windows have no room for it. The trailing partial segment is
+     * left for the caller to push. Must be called while holding the lock, with the
+     * connection established.
+     *
+     * @param src the data to send, its position advanced past the end
+     * @return the number of bytes sent
+     */
+    protected int putData(ByteBuffer src) {
+        int sent = 0;
+        while (src.hasRemaining()) {
+            if (sndBuf == null) {
+                sndBuf = sndPool.acquire();
+            }
+            int len = Math.min(sndMSS - sndBufLen, src.remaining());
+            src.get(sndBuf.array(), sndBufLen, len);
+            sndBufLen += len;
+            sent += len;
+            if (sndBufLen == sndMSS) {
+                // An ACK may send the full segment while we wait
+                while (sndBufLen == sndMSS && !canSend()) {
+                    awaitSendRoom();
+                }
+                if (sndBufLen == sndMSS) {
+                    sendSegment();
+                }
+            }
+        }
+        return sent;
+    }
+
+    /**
+     * Sends as much data as can be taken without waiting, coalesced as by
+     * {@link #sendData}. Stops once a full segment is held that the windows do not let
+     * out; a later OP_WRITE event tells when there is room again.
+     *
+     * @param data   the data to send
+     * @param offset the offset in the data array
+     * @param length the length of data to send
+     * @return the number of bytes taken, 0 while the connection is being established
+     * @throws IllegalStateException if the connection is neither established nor being established
+     */
+    public int trySendData(byte[] data, int offset, int length) {
+        lock.lock();
+        try {
+            if (state == SYN_SENT) {
+                return 0;
+            }
+            if (state != ESTABLISHED && state != CLOSE_WAIT) {
+                throw new IllegalStateException("Connection not established");
+            }
+            return offerData(ByteBuffer.wrap(data, offset, length));
+        } finally {
+            unlock();
+        }
+    }
+
+    /**
+     * Takes as much data from the buffer as the windows allow without waiting, and
+     * sends what Nagle's algorithm and corking let out. Must be called while holding
+     * the lock, with the connection established.
+     *
+     * @param src the data to send, its position advanced past the bytes taken
+     * @return the number of bytes taken
+     */
+    protected int offerData(ByteBuffer src) {
+        int sent = 0;
+        while (src.hasRemaining()) {
+            if (sndBufLen == sndMSS) {
+                if (!canSend()) {
+                    armPersist();
+                    break;
+                }
+                sendSegment();
+            }
+            if (sndBuf == null) {
+                sndBuf = sndPool.acquire();
+            }
+            int len = Math.min(sndMSS - sndBufLen, src.remaining());
+            src.get(sndBuf.array(), sndBufLen, len);
+            sndBufLen += len;
+            sent += len;
+        }
+        pushPending();
+        return sent;
+    }
+
+    /**
+     * Starts connecting and returns a future completed with this socket once the
+     * connection is established. A socket already connected or connecting is not
+     * connected again.
+     *
+     * @return the future of the connection
+     */
+    public CompletableFuture<TSocket> connectAsync() {
+        lock.lock();
+        try {
+            if (connectFuture != null) {
+                return connectFuture;
+            }
+            if (state != CLOSED) {
+                return CompletableFuture.completedFuture(this);
+            }
+            connectFuture = new CompletableFuture<>();
+            asyncPending++;
+            connect();
+            return connectFuture;
+        } finally {
+            unlock();
+        }
+    }
+
+    /**
+     * Receives data into the buffer without blocking. The future completes at once if
+     * data is available, otherwise from the receive path when some arrives, with the
+     * number of bytes received, or -1 if the peer closed and no data is left.
+     * Only one asynchronous receive may be pending.
+     *
+     * @param dst the buffer receiving the data
+     * @return the future of the number of bytes received
+     * @throws IllegalStateException if a receive is already pending
+     */
+    public CompletableFuture<Integer> receiveAsync(ByteBuffer dst) {
+        lock.lock();
+        try {
+            if (rcvFuture != null) {
+                throw new IllegalStateException("Receive already pending");
+            }
+            if (!rcvQueue.empty()) {
+                return CompletableFuture.completedFuture(receiveInto(dst));
+            }
+            if (state == CLOSE_WAIT || state == CLOSED) {
+                return CompletableFuture.completedFuture(-1);
+            }
+            rcvFuture = new CompletableFuture<>();
+            rcvFutureBuf = dst;
+            asyncPending++;
+            return rcvFuture;
+        } finally {
+            unlock();
+        }
+    }
+
+    /**
+     * Sends the remaining data of the buffer without blocking. What the windows do
+     * not take at once is sent from the receive path as ACKs open them; the future
+     * completes with the number of bytes once all of them are taken. The buffer must
+     * not be modified until then. Only one asynchronous send may be pending.
+     *
+     * @param src the data to send
+     * @return the future of the number of bytes sent
+     * @throws IllegalStateException if a send is already pending
+     */
+    public CompletableFuture<Integer> sendAsync(ByteBuffer src) {
+        lock.lock();
+        try {
+            if (sndFuture != null) {
+                throw new IllegalStateException("Send already pending");
+            }
+            if (state != SYN_SENT && state != ESTABLISHED && state != CLOSE_WAIT) {
+                return CompletableFuture.failedFuture(new IllegalStateException("Connection not established"));
+            }
+            int total = src.remaining();
+            if (state != SYN_SENT) {
+                offerData(src);
+            }
+            if (!src.hasRemaining()) {
+                return CompletableFuture.completedFuture(total);
+            }
+            sndFuture = new CompletableFuture<>();
+            sndFutureBuf = src;
+            sndFutureLen = total;
+            asyncPending++;
+            return sndFuture;
+        } finally {
+            unlock();
+        }
+    }
+
+    /**
+     * Progresses the pending asynchronous operations after a segment was processed,
+     * and completes those that are done once the lock is released, so that dependent
+     * stages run on the receive thread without holding it.
+     */
+    protected void completeAsync() {
+        if (asyncPending == 0) {
+            return;
+        }
+        CompletableFuture<TSocket> connected = null;
+        CompletableFuture<Integer> received = null, sent = null;
+        int rcvd = 0, sentLen = 0;
+        lock.lock();
+        try {
+            if (connectFuture != null && state != SYN_SENT) {
+                connected = connectFuture;
+                connectFuture = null;
+                asyncPending--;
+            }
+            if (rcvFuture != null && (!rcvQueue.empty() || state == CLOSE_WAIT || state == CLOSED)) {
+                received = rcvFuture;
+                rcvd = rcvQueue.empty() ? -1 : receiveInto(rcvFutureBuf);
+                rcvFuture = null;
+                rcvFutureBuf = null;
+                asyncPending--;
+            }
+            if (sndFuture != null && (state == ESTABLISHED || state == CLOSE_WAIT)) {
+                offerData(sndFutureBuf);
+                if (!sndFutureBuf.hasRemaining()) {
+                    sent = sndFuture;
+                    sentLen = sndFutureLen;
+                    sndFuture = null;
+                    sndFutureBuf = null;
+                    asyncPending--;
+                }
+            }
+        } finally {
+            unlock();
+        }
+        if (connected != null) {
+            connected.complete(this);
+        }
+        if (received != null) {
+            received.complete(rcvd);
+        }
+        if (sent != null) {
+            sent.complete(sentLen);
+        }
+    }
+
+    /**
+     * Sends the partial segment held, if any, regardless of Nagle's algorithm and
+     * corking. Blocks while the windows leave no room for it.
+     */
+    public void flush() {
+        lock.lock();
+        try {
+            while (sndBufLen > 0 && (state == ESTABLISHED || state == CLOSE_WAIT)) {
+                if (canSend()) {
+                    sendSegment();
+                } else {
+                    awaitSendRoom();
+                }
+            }
+        } finally {
+            unlock();
+        }
+    }
+
+    /**
+     * Sends the segment held if it is full, or if it is partial and neither Nagle's
+     * algorithm nor corking holds it back, provided the windows have room.
+     */
+    protected void pushPending() {
+        if (sndBufLen == 0 || !canSend()) {
+            return;
+        }
+        if (sndBufLen == sndMSS || (!sndCork && (sndNoDelay || sndRtQueue.empty()))) {
+            sendSegment();
+        }
+    }
+
+    /**
+     * Waits for room in the windows, arming the persist timer when the peer
+     * advertises a zero window and nothing in flight will bring an update.
+     */
+    protected void awaitSendRoom() {
+        armPersist();
+        awaitEvent();
+    }
+
+    /**
+     * Waits for a state change signalled on appCV. An application thread holding
+     * segments deferred while the link was full sends them instead, with the lock
+     * released as a wait would release it, since what it waits for may depend on
+     * them. Callers check their condition again in a loop.
+     */
+    protected void awaitEvent() {
+        if (sndOutCount > 0 && !sndOutBusy && !Threads.isNetworkThread()) {
+            int holds = lock.getHoldCount();
+            for (int i = 0; i < holds; i++) {
+                lock.unlock();
+            }
+            try {
+                sendDeferred();
+            } finally {
+                for (int i = 0; i < holds; i++) {
+                    lock.lock();
+                }
+            }
+            return;
+        }
+        appCV.awaitUninterruptibly();
+    }
+
+    /**
+     * Releases the lock. An application thread that no longer holds it then sends the
+     * segments deferred while the link was full.
+     */
+    protected void unlock() {
+        lock.unlock();
+        if (sndOutCount > 0 && !lock.isHeldByCurrentThread() && !Threads.isNetworkThread()) {
+            sendDeferred();
+        }
+    }
+
+    /**
+     * Sends the deferred segments in order, waiting for room on the link without
+     * holding the lock. Only one application thread sends them at a time; segments
+     * deferred meanwhile are sent by the same thread.
+     */
+    protected void sendDeferred() {
+        lock.lock();
+        try {
+            if (sndOutBusy) {
+                return;
+            }
+            sndOutBusy = true;
+        } finally {
+            lock.unlock();
+        }
+        while (true) {
+            TCPSegment seg;
+            lock.lock();
+            try {
+                seg = sndOut.poll();
+                if (seg == null) {
+                    sndOutBusy = false;
+                    return;
+                }
+                sndOutCount--;
+            } finally {
+                lock.unlock();
+            }
+            network.send(seg);
+        }
+    }
+
+    /**
+     * Sends the segment held as a new data segment, keeping it for retransmission.
+     */
+    protected void sendSegment() {
+        TCPSegment seg = TCPSegment.obtain();
+        seg.setData(sndBuf, 0, sndBufLen);
+        sndBuf.release();
+        sndBuf = null;
+        sndBufLen = 0;
+        sendSegment(seg);
+    }
+
+    /**
+     * Sends a segment holding its payload as a new data segment, keeping it for
+     * retransmission.
+     *
+     * @param seg the segment, whose creation reference is taken over
+     */
+    protected void sendSegment(TCPSegment seg) {
+        seg.setPsh(true);
+        seg.setSourcePort(localPort);
+        seg.setDestinationPort(remotePort);
+        seg.setSeqNum(sndNxt++);
+        sndRtxNxt = sndNxt;
+        piggybackAck(seg);
+        // The retransmission queue keeps the creation reference, the network gets its own
+        sndRtQueue.put(seg);
+        sndScoreboard.sent(seg.getSeqNum());
+        int slot = seg.getSeqNum() % sndSentAt.length;
+        sndSentAt[slot] = System.nanoTime();
+        sndRetransmitted[slot] = false;
+        printSndSeg(seg);
+        transmit(seg.retain());
+        if (sndRtQueue.size() == 1) {
+            startRTO();
+        }
+    }
+
+    /**
+     * Tells whether a new segment fits in the send, congestion and peer receive windows.
+     *
+     * @return true if a new segment may be sent
+     */
+    protected boolean canSend() {
+        int inFlight = sndNxt - sndUna;
+        return inFlight < Math.min(sndWnd, cc.getCwnd()) && inFlight < sndRcvWnd;
+    }
+
+    /**
+     * Receives data, blocking until at least one byte is available.
+     *
+     * @param buf    the buffer to store received data
+     * @param offset the offset in the buffer
+     * @param length the maximum number of bytes to receive
+     * @return the number of bytes received, or -1 if the peer closed and no data is left
+     */
+    @Override
+    public int receiveData(byte[] buf, int offset, int length) {
+        lock.lock();
+        try {
+            while (rcvQueue.empty()) {
+                if (state == CLOSE_WAIT || state == CLOSED) {
+                    return -1;
+                }
+                awaitEvent();
+            }
+            int received = 0;
+            while (received < length && !rcvQueue.empty()) {
+                received += consumeSegment(buf, offset + received, length - received);
+            }
+            sendWindowUpdate();
+            return received;
+        } finally {
+            unlock();
+        }
+    }
+
+    /**
+     * Receives data into the buffers, heap or direct, filling each one before the
+     * next, so that a header and a body land in buffers of their own. Blocks until
+     * data is available, then scatters as much of it as fits straight from the
+     * received segments.
+     *
+     * @param dsts the buffers to store received data
+     * @return the number of bytes received, or -1 if the peer closed and no data is left
+     */
+    @Override
+    public long receiveData(ByteBuffer... dsts) {
+        lock.lock();
+        try {
+            while (rcvQueue.empty()) {
+                if (state == CLOSE_WAIT || state == CLOSED) {
+                    return -1;
+                }
+                awaitEvent();
+            }
+            long received = 0;
+            for (ByteBuffer dst : dsts) {
+                while (dst.hasRemaining() && !rcvQueue.empty()) {
+                    received += consumeSegment(dst);
+                }
+            }
+            sendWindowUpdate();
+            return received;
+        } finally {
+            unlock();
+        }
+    }
+
+    /**
+     * Writes the received data to a file at its current position until the peer
+     * closes the connection. The payload of every segment is written straight from
+     * the segment, outside the lock, so the receive path is not held up by the file.
+     *
+     * @param dst the file to write to
+     * @return the number of bytes written
+     * @throws IOException if writing to the file fails
+     */
+    public long transferTo(FileChannel dst) throws IOException {
+        if (dst == null) {
+            throw new NullPointerException("File channel cannot be null");
+        }
+        long written = 0;
+        while (true) {
+            TCPSegment seg;
+            int from;
+            lock.lock();
+            try {
+                while (rcvQueue.empty()) {
+                    if (state == CLOSE_WAIT || state == CLOSED) {
+                        return written;
+                    }
+                    awaitEvent();
+                }
+                // Take over the queue's reference
+                seg = rcvQueue.get();
+                from = rcvSegConsumedBytes;
+                rcvSegConsumedBytes = 0;
+                sendWindowUpdate();
+            } finally {
+                unlock();
+            }
+            try {
+                ByteBuffer data = seg.getDataBuffer();
+                data.position(from);
+                while (data.hasRemaining()) {
+                    written += dst.write(data);
+                }
+            } finally {
+                seg.release();
+            }
+        }
+    }
+
+    /**
+     * Receives the data available without waiting.
+     *
+     * @param buf    the buffer to store received data
+     * @param offset the offset in the buffer
+     * @param length the maximum number of bytes to receive
+     * @return the number of bytes received, 0 if none is available, or -1 if the peer
+     * closed and no data is left
+     */
+    public int tryReceiveData(byte[] buf, int offset, int length) {
+        lock.lock();
+        try {
+            if (rcvQueue.empty()) {
+                return (state == CLOSE_WAIT || state == CLOSED) ? -1 : 0;
+            }
+            int received = 0;
+            while (received < length && !rcvQueue.empty()) {
+                received += consumeSegment(buf, offset + received, length - received);
+            }
+            sendWindowUpdate();
+            return received;
+        } finally {
+            unlock();
+        }
+    }
+
+    /**
+     * Reports data or end of stream to read, room to write, and an established
+     * connection.
+     */
+    @Override
+    protected int readyOps() {
+        lock.lock();
+        try {
+            int ops = 0;
+            if (!rcvQueue.empty() || state == CLOSE_WAIT) {
+                ops |= TSelector.OP_READ;
+            }
+            if (state == ESTABLISHED || state == CLOSE_WAIT) {
+                ops |= TSelector.OP_CONNECT;
+                if (sndBufLen < sndMSS || canSend()) {
+                    ops |= TSelector.OP_WRITE;
+                }
+            }
+            return ops;
+        } finally {
+            unlock();
+        }
+    }
+
+    /**
+     * Moves the data available into the buffer, as much as fits. Must be called while
+     * holding the lock.
+     *
+     * @param dst the buffer receiving the data
+     * @return the number of bytes received
+     */
+    protected int receiveInto(ByteBuffer dst) {
+        int received = 0;
+        while (dst.hasRemaining() && !rcvQueue.empty()) {
+            received += consumeSegment(dst);
+        }
+        sendWindowUpdate();
+        return received;
+    }
+
     /**
-     * Constructor initializing with protocol, local port, and remote port.
+     * Copies bytes from the head of the receive queue, removing the segment once it is fully read.
      *
-     * @param p          the protocol instance
-     * @param localPort  the local port number
-     * @param remotePort the remote port number
+     * @param buf    destination buffer
+     * @param offset offset in the destination buffer
+     * @param length maximum number of bytes to copy
+     * @return the number of bytes copied
      */
-    protected TSocket(Protocol p, int localPort, int remotePort) {
-        super(p.getNetwork());
-        proto = p;
-        this.localPort = localPort;
-        this.remotePort = remotePort;
-        state = CLOSED;
-        p.addActiveTSocket(this);
+    protected int consumeSegment(byte[] buf, int offset, int length) {
+        TCPSegment seg = rcvQueue.peekFirst();
+        int n = Math.min(length, seg.getDataLength() - rcvSegConsumedBytes);
+        seg.copyData(rcvSegConsumedBytes, buf, offset, n);
+        rcvSegConsumedBytes += n;
+        if (rcvSegConsumedBytes == seg.getDataLength()) {
+            rcvQueue.get().release();
+            rcvSegConsumedBytes = 0;
+        }
+        return n;
     }
 
     /**
-     * Initiates a connection to a remote socket.
+     * Copies bytes from the head of the receive queue into the buffer, removing the
+     * segment once it is fully read.
+     *
+     * @param dst destination buffer, its position advanced past the bytes copied
+     * @return the number of bytes copied
      */
-    @Override
-    public void connect() {
+    protected int consumeSegment(ByteBuffer dst) {
+        TCPSegment seg = rcvQueue.peekFirst();
+        int n = Math.min(dst.remaining(), seg.getDataLength() - rcvSegConsumedBytes);
+        seg.copyData(rcvSegConsumedBytes, dst, n);
+        rcvSegConsumedBytes += n;
+        if (rcvSegConsumedBytes == seg.getDataLength()) {
+            rcvQueue.get().release();
+            rcvSegConsumedBytes = 0;
+        }
+        return n;
+    }
+
+    /**
+     * Sends a window update once reading has freed enough of the receive queue:
+     * always when the last advertised window was zero, otherwise when it grew by a
+     * quarter of the queue, so that a slow reader does not trigger an ACK per segment.
+     */
+    protected void sendWindowUpdate() {
+        if (state != ESTABLISHED && state != FIN_WAIT) {
+            return;
+        }
+        int wnd = rcvWindow();
+        int threshold = Math.max(1, (rcvQueue.free() + rcvQueue.size()) / 4);
+        if (wnd > rcvAdvWnd && (rcvAdvWnd == 0 || wnd - rcvAdvWnd >= threshold)) {
+            sendAck(-1);
+        }
+    }
+
+    /**
+     * Returns the receive window to advertise: the free room in the receive queue,
+     * bounded while the received data is published by the segments the subscriber
+     * requested and that are not queued yet, so that a slow subscriber throttles the
+     * peer. Must be called while holding the lock.
+     *
+     * @return the receive window, in segments
+     */
+    protected int rcvWindow() {
+        int free = rcvQueue.free();
+        RcvSubscription s = rcvSubscription;
+        if (s == null) {
+            return free;
+        }
+        return (int) Math.max(0, Math.min(free, s.demand - rcvQueue.size()));
+    }
+
+    /**
+     * Returns a publisher of the received data. Every item carries the data of one
+     * segment, so the demand of the subscriber counts segments as the receive window
+     * does, and the window advertised to the peer never exceeds it. The stream
+     * completes once the peer closes the connection. There may be one subscriber at
+     * a time, and the data must not be received otherwise while it is subscribed.
+     *
+     * @return the publisher of the received data
+     */
+    public Flow.Publisher<ByteBuffer> getPublisher() {
+        return subscriber -> {
+            if (subscriber == null) {
+                throw new NullPointerException("Subscriber cannot be null");
+            }
+            RcvSubscription s = new RcvSubscription(subscriber);
+            lock.lock();
+            try {
+                if (rcvSubscription == null) {
+                    rcvSubscription = s;
+                } else {
+                    s.done = true;
+                }
+            } finally {
+                unlock();
+            }
+            subscriber.onSubscribe(s);
+            if (s.done) {
+                subscriber.onError(new IllegalStateException("Publisher already subscribed"));
+                return;
+            }
+            deliverReceived();
+        };
+    }
+
+    /**
+     * Returns a subscriber sending the data it is given. It requests one buffer at a
+     * time and the next one once the windows have taken the whole previous one, so a
+     * slow peer throttles the publisher. Completion does not close the socket.
+     *
+     * @return a subscriber sending its items
+     */
+    public Flow.Subscriber<ByteBuffer> getSubscriber() {
+        return new SndSubscriber();
+    }
+
+    /**
+     * Signals the received data and the end of stream to the subscriber as far as
+     * its demand allows. Signals are issued outside the lock, by one thread at a time.
+     */
+    protected void deliverReceived() {
+        RcvSubscription s = rcvSubscription;
+        if (s == null) {
+            return;
+        }
         lock.lock();
         try {
-            client = true;
-            proto.addActiveTSocket(this);
-            state = SYN_SENT;
-            sendSyn(false);
+            if (s.draining) {
+                return;
+            }
+            s.draining = true;
         } finally {
-            lock.unlock();
+            unlock();
+        }
+        while (true) {
+            ByteBuffer item = null;
+            boolean complete = false;
+            lock.lock();
+            try {
+                if (rcvSubscription != s) {
+                    s.draining = false;
+                    return;
+                }
+                if (s.demand > 0 && !rcvQueue.empty()) {
+                    TCPSegment seg = rcvQueue.get();
+                    byte[] d = new byte[seg.getDataLength() - rcvSegConsumedBytes];
+                    seg.copyData(rcvSegConsumedBytes, d, 0, d.length);
+                    item = ByteBuffer.wrap(d);
+                    seg.release();
+                    rcvSegConsumedBytes = 0;
+                    s.demand--;
+                    sendWindowUpdate();
+                } else if (rcvQueue.empty() && (state == CLOSE_WAIT || state == CLOSED)) {
+                    rcvSubscription = null;
+                    s.done = true;
+                    complete = true;
+                } else {
+                    s.draining = false;
+                    return;
+                }
+            } finally {
+                unlock();
+            }
+            if (complete) {
+                s.subscriber.onComplete();
+                return;
+            }
+            s.subscriber.onNext(item);
+        }
+    }
+
+    /**
+     * Subscription to the received data, guarded by the socket lock.
+     */
+    protected class RcvSubscription implements Flow.Subscription {
+
+        final Flow.Subscriber<? super ByteBuffer> subscriber;
+
+        /** Segments requested and not delivered yet */
+        long demand;
+
+        /** Whether a thread is signalling the subscriber */
+        boolean draining;
+
+        /** Whether the subscription is cancelled or terminated */
+        boolean done;
+
+        RcvSubscription(Flow.Subscriber<? super ByteBuffer> subscriber) {
+            this.subscriber = subscriber;
+        }
+
+        @Override
+        public void request(long n) {
+            if (n <= 0) {
+                cancel();
+                subscriber.onError(new IllegalArgumentException("Demand must be positive: " + n));
+                return;
+            }
+            lock.lock();
+            try {
+                if (done) {
+                    return;
+                }
+                demand = (demand + n < 0) ? Long.MAX_VALUE : demand + n;
+                sendWindowUpdate();
+            } finally {
+                unlock();
+            }
+            deliverReceived();
+        }
+
+        @Override
+        public void cancel() {
+            lock.lock();
+            try {
+                done = true;
+                if (rcvSubscription == this) {
+                    rcvSubscription = null;
+                    sendWindowUpdate();
+                }
+            } finally {
+                unlock();
+            }
+        }
+    }
+
+    /**
+     * Subscriber sending its items through asynchronous sends, one at a time.
+     */
+    protected class SndSubscriber implements Flow.Subscriber<ByteBuffer> {
+
+        private Flow.Subscription subscription;
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            if (this.subscription != null) {
+                subscription.cancel();
+                return;
+            }
+            this.subscription = subscription;
+            subscription.request(1);
+        }
+
+        @Override
+        public void onNext(ByteBuffer item) {
+            sendAsync(item).whenComplete((n, e) -> {
+                if (e != null) {
+                    subscription.cancel();
+                } else {
+                    subscription.request(1);
+                }
+            });
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            log.print(Log.Level.WARN, Log.RED, "    publisher failed: ", throwable);
+        }
+
+        @Override
+        public void onComplete() {
         }
     }
 
     /**
-     * Closes the socket connection.
+     * Closes the socket connection. The FIN is retransmitted on every timeout until
+     * the peer acknowledges it, up to {@link Const#FIN_RETRIES} times.
      */
     @Override
     public void close() {
         lock.lock();
         try {
+            flush();
+            while ((state == ESTABLISHED || state == CLOSE_WAIT) && !sndRtQueue.empty()) {
+                awaitEvent();
+            }
             switch (state) {
                 case ESTABLISHED:
                     state = FIN_WAIT;
@@ -77,9 +1421,13 @@ public class TSocket extends TSocketBase {
                 case CLOSE_WAIT:
                     sendFin(false);
                     break;
+                default:
+                    return;
             }
+            sndFinPending = true;
+            startRTO();
         } finally {
-            lock.unlock();
+            unlock();
         }
     }
 
@@ -96,65 +1444,609 @@ public class TSocket extends TSocketBase {
             switch (state) {
                 case SYN_SENT:
                     if (rseg.isSyn()) {
+                        stopRTO();
+                        if (!synRetransmitted) {
+                            rttSample((System.nanoTime() - synSentAt) / 1e6);
+                        }
+                        resetRTOBackoff();
+                        sndRcvWnd = rseg.getWnd();
+                        rcvNxt = rseg.getSeqNum();
                         state = ESTABLISHED;
-                        appCV.signal();
+                        // Completes the handshake, the server allocates its socket on this ACK
+                        sendAck(-1);
+                        appCV.signalAll();
+                        ready(TSelector.OP_CONNECT | TSelector.OP_WRITE);
                     }
                     break;
                 case ESTABLISHED:
-                    if (rseg.isFin()) {
+                    if (rseg.isSyn()) {
+                        if (client) {
+                            // Our final ACK was lost, the server is retransmitting its SYN
+                            sendAck(-1);
+                        } else {
+                            // Our SYN was lost, the peer is retransmitting its own
+                            sendSyn(true);
+                        }
+                    } else if (rseg.isFin()) {
                         state = CLOSE_WAIT;
+                        sendFinAck(rseg);
+                        appCV.signalAll();
+                        ready(TSelector.OP_READ);
+                    } else {
+                        // Data segments may carry a piggybacked ACK
+                        if (rseg.isAck()) {
+                            processAck(rseg);
+                        }
+                        if (rseg.isPsh()) {
+                            processData(rseg);
+                        }
                     }
                     break;
                 case FIN_WAIT:
-                    if (rseg.isFin()) {
+                    if (rseg.isPsh()) {
+                        processData(rseg);
+                    } else if (rseg.isFin()) {
                         state = CLOSED;
+                        sendFinAck(rseg);
+                        appCV.signalAll();
+                        ready(TSelector.OP_READ);
+                    } else if (rseg.isAck()) {
+                        processFinAck(rseg);
                     }
                     break;
                 case CLOSE_WAIT:
-                    if (rseg.isPsh()) {
-                        // Handle data segment
+                    if (rseg.isFin()) {
+                        // Our ACK of the peer's FIN was lost
+                        sendFinAck(rseg);
+                    } else if (rseg.isAck()) {
+                        processAck(rseg);
+                        processFinAck(rseg);
+                    }
+                    break;
+                case CLOSED:
+                    if (rseg.isFin()) {
+                        sendFinAck(rseg);
+                    } else if (rseg.isAck()) {
+                        processFinAck(rseg);
                     }
                     break;
             }
         } finally {
-            lock.unlock();
+            unlock();
+        }
+        completeAsync();
+        deliverReceived();
+    }
+
+    /**
+     * Handles an incoming data segment and acknowledges it.
+     * In go-back-N mode only the next in-order segment is accepted; in selective
+     * repeat mode out-of-order segments inside the receive window are held until
+     * the gap before them is filled, and reported back through SACK blocks.
+     * The ACK of in-order data is delayed until a second segment arrives or the
+     * delayed ACK timer expires; any other segment is acknowledged at once, so
+     * that the sender learns about losses without delay.
+     *
+     * @param rseg the received data segment
+     */
+    protected void processData(TCPSegment rseg) {
+        int seq = rseg.getSeqNum();
+        int sack = -1;
+        if (seq == rcvNxt && !rcvQueue.full()) {
+            rcvQueue.put(rseg.retain());
+            rcvNxt++;
+            rcvAckPending++;
+            boolean filled = false;
+            if (mode == SELECTIVE_REPEAT) {
+                int i = rcvNxt % rcvOutOfOrder.length;
+                while (rcvOutOfOrder[i] != null && !rcvQueue.full()) {
+                    rcvQueue.put(rcvOutOfOrder[i]);
+                    rcvOutOfOrder[i] = null;
+                    rcvOutOfOrderCount--;
+                    rcvNxt++;
+                    filled = true;
+                    i = rcvNxt % rcvOutOfOrder.length;
+                }
+            }
+            appCV.signalAll();
+            ready(TSelector.OP_READ);
+            if (!filled && rcvOutOfOrderCount == 0 && rcvAckDelay > 0 && rcvAckPending < 2) {
+                timerService.schedule(rcvAckTimer, rcvAckDelay);
+                return;
+            }
+        } else if (mode == SELECTIVE_REPEAT && seq > rcvNxt && seq < rcvNxt + rcvQueue.free()) {
+            int i = seq % rcvOutOfOrder.length;
+            if (rcvOutOfOrder[i] == null) {
+                rcvOutOfOrder[i] = rseg.retain();
+                rcvOutOfOrderCount++;
+            }
+            sack = seq;
+        }
+        sendAck(sack);
+    }
+
+    /**
+     * Handles the delayed ACK timeout, acknowledging the in-order data still pending.
+     */
+    protected void ackTimeout() {
+        lock.lock();
+        try {
+            if (rcvAckPending > 0) {
+                sendAck(-1);
+            }
+        } finally {
+            unlock();
+        }
+    }
+
+    /**
+     * Handles an incoming acknowledgement, sliding the send window forward, feeding
+     * the congestion control, resuming retransmissions pending after a timeout, and
+     * recording the receive window the peer advertises.
+     * The third duplicate ACK, or in selective repeat mode SACK blocks showing the
+     * oldest segment lost, trigger a fast retransmit and fast recovery: the window is
+     * reduced as the congestion control decides rather than collapsed, and further
+     * duplicate ACKs let more retransmissions and new data out.
+     *
+     * @param rseg the received ACK segment
+     */
+    protected void processAck(TCPSegment rseg) {
+        int ack = rseg.getAckNum();
+        boolean dup = !rseg.isPsh() && ack == sndUna && sndUna != sndNxt && rseg.getWnd() == sndRcvWnd;
+        if (ack > sndUna && ack <= sndNxt) {
+            sndDupAcks = 0;
+            int last = (ack - 1) % sndSentAt.length;
+            if (!sndRetransmitted[last]) {
+                rttSample((System.nanoTime() - sndSentAt[last]) / 1e6);
+            }
+            resetRTOBackoff();
+            cc.onAck(ack, ack - sndUna);
+            while (sndUna < ack) {
+                sndRtQueue.get().release();
+                sndUna++;
+            }
+            sndScoreboard.ack(ack);
+            sndRtxNxt = Math.max(sndRtxNxt, sndUna);
+            retransmitPending();
+            if (sndRtQueue.empty()) {
+                stopRTO();
+            } else {
+                startRTO();
+            }
+            appCV.signalAll();
+            ready(TSelector.OP_WRITE);
+        }
+        int seq = rseg.getSeqNum();
+        if (ack == sndUna && (seq > sndWl1 || (seq == sndWl1 && ack >= sndWl2))) {
+            // Retransmitted data carries a stale piggybacked window, which must not be used
+            sndWl1 = seq;
+            sndWl2 = ack;
+            int wnd = rseg.getWnd();
+            if (wnd > sndRcvWnd) {
+                appCV.signalAll();
+                ready(TSelector.OP_WRITE);
+            }
+            sndRcvWnd = wnd;
+            if (wnd > 0 && sndPersistArmed) {
+                sndPersistArmed = false;
+                sndPersistBackoff = 0;
+                timerService.cancel(sndPersistTimer);
+            }
+        }
+        if (mode == SELECTIVE_REPEAT) {
+            for (int i = 0; i < rseg.getSackBlocks(); i++) {
+                sndScoreboard.sack(rseg.getSackLeft(i), rseg.getSackRight(i));
+            }
+        }
+        if (sndFastRetransmit && sndUna != sndNxt) {
+            if (dup) {
+                sndDupAcks++;
+            }
+            if (!cc.inRecovery()) {
+                if (sndDupAcks == Const.DUP_ACK_THRESH || (mode == SELECTIVE_REPEAT
+                        && sndScoreboard.markLost(Const.DUP_ACK_THRESH) > 0 && sndScoreboard.isLost(sndUna))) {
+                    fastRetransmit();
+                }
+            } else {
+                if (dup) {
+                    cc.onDupAck();
+                }
+                if (mode == GO_BACK_N) {
+                    retransmitPending();
+                } else {
+                    retransmitLost();
+                }
+                appCV.signalAll();
+                ready(TSelector.OP_WRITE);
+            }
+        }
+        if (sndBufLen > 0) {
+            pushPending();
+            if (sndBufLen > 0) {
+                armPersist();
+            }
+        }
+    }
+
+    /**
+     * Starts fast recovery after a loss detected by duplicate ACKs or SACK blocks.
+     * In go-back-N mode the receiver dropped everything after the hole, so sending
+     * restarts from the oldest unacknowledged segment; in selective repeat mode only
+     * the segments the scoreboard deems lost are retransmitted.
+     */
+    protected void fastRetransmit() {
+        fastRecoveries++;
+        cc.onLoss(sndNxt - sndUna, sndNxt);
+        if (mode == GO_BACK_N) {
+            sndRtxNxt = sndUna;
+            retransmitPending();
+        } else {
+            sndScoreboard.lost(sndUna);
+            retransmitLost();
+        }
+    }
+
+    /**
+     * Retransmits the segments the scoreboard deems lost, lowest first, while the
+     * estimated segments in flight stay below the congestion window.
+     */
+    protected void retransmitLost() {
+        sndScoreboard.markLost(Const.DUP_ACK_THRESH);
+        int cwnd = cc.getCwnd();
+        int seq;
+        while (sndScoreboard.pipe() < cwnd && (seq = sndScoreboard.nextLost()) != -1) {
+            sndScoreboard.retransmitted(seq);
+            for (TCPSegment seg : sndRtQueue) {
+                if (seg.getSeqNum() == seq) {
+                    sndRetransmitted[seq % sndRetransmitted.length] = true;
+                    printRetSeg(seg);
+                    transmit(seg.retain());
+                    break;
+                }
+            }
+        }
+    }
+
+    /**
+     * Handles the retransmission timeout: retransmits the SYN while connecting, the
+     * FIN while closing until the peer acknowledges it, or restarts sending from the oldest unacknowledged segment. Every outstanding segment
+     * in go-back-N mode, or only those not selectively acknowledged in selective repeat
+     * mode, is retransmitted as the congestion window, collapsed to one segment, opens
+     * again. The retransmission timeout is doubled on every expiry until the peer
+     * acknowledges new data.
+     */
+    @Override
+    protected void timeout() {
+        lock.lock();
+        try {
+            if (state == SYN_SENT) {
+                synRetransmitted = true;
+                backoffRTO();
+                sendSyn(true);
+                startRTO();
+                return;
+            }
+            if (sndFinPending) {
+                if (sndFinRetries == Const.FIN_RETRIES) {
+                    sndFinPending = false;
+                    return;
+                }
+                sndFinRetries++;
+                backoffRTO();
+                sendFin(true);
+                startRTO();
+                return;
+            }
+            if (sndRtQueue.empty()) {
+                return;
+            }
+            backoffRTO();
+            timeoutRecoveries++;
+            sndDupAcks = 0;
+            cc.onTimeout(sndNxt - sndUna);
+            for (TCPSegment seg : sndRtQueue) {
+                // Segments held at the receiver behind a hole would be timed until the
+                // hole is repaired, so every outstanding segment stops giving samples
+                sndRetransmitted[seg.getSeqNum() % sndRetransmitted.length] = true;
+            }
+            sndScoreboard.markAllLost();
+            sndRtxNxt = sndUna;
+            retransmitPending();
+            startRTO();
+        } finally {
+            unlock();
+        }
+    }
+
+    /**
+     * Arms the persist timer if the peer advertises a zero window and nothing is in
+     * flight, since no ACK would then bring a window update.
+     */
+    protected void armPersist() {
+        if (sndNxt - sndUna >= sndRcvWnd && sndRtQueue.empty() && !sndPersistArmed) {
+            sndPersistArmed = true;
+            timerService.schedule(sndPersistTimer, persistTimeout());
+        }
+    }
+
+    /**
+     * Handles the persist timeout: while the peer advertises a zero window and nothing
+     * is in flight, sends a probe that makes it report its current window, in case the
+     * update announcing free room was lost. Probes back off exponentially.
+     */
+    protected void persist() {
+        lock.lock();
+        try {
+            if (!sndPersistArmed) {
+                return;
+            }
+            if (sndRcvWnd > 0 || !sndRtQueue.empty() || (state != ESTABLISHED && state != CLOSE_WAIT)) {
+                sndPersistArmed = false;
+                sndPersistBackoff = 0;
+                return;
+            }
+            sendProbe();
+            if (persistTimeout() < rtoMax) {
+                sndPersistBackoff++;
+            }
+            timerService.schedule(sndPersistTimer, persistTimeout());
+        } finally {
+            unlock();
+        }
+    }
+
+    /**
+     * Computes the persist timeout: the retransmission timeout doubled once per probe.
+     *
+     * @return the persist timeout in milliseconds
+     */
+    protected long persistTimeout() {
+        return Math.min(currentRTO() << Math.min(sndPersistBackoff, 30), rtoMax);
+    }
+
+    /**
+     * Sends a zero window probe: an empty segment carrying the last sequence number
+     * already acknowledged, which the peer answers with an ACK but never queues.
+     */
+    protected void sendProbe() {
+        TCPSegment probe = TCPSegment.obtain();
+        probe.setPsh(true);
+        probe.setSourcePort(localPort);
+        probe.setDestinationPort(remotePort);
+        probe.setSeqNum(sndNxt - 1);
+        printSndSeg(probe);
+        transmit(probe);
+    }
+
+    /**
+     * Updates the RTT estimators and passes the sample on to the congestion control.
+     *
+     * @param rttMs the measured round-trip time in milliseconds
+     */
+    @Override
+    protected void rttSample(double rttMs) {
+        super.rttSample(rttMs);
+        cc.onRttSample(rttMs);
+    }
+
+    /**
+     * Retransmits the segments from sndRtxNxt on while the congestion window allows,
+     * skipping those selectively acknowledged in selective repeat mode.
+     */
+    protected void retransmitPending() {
+        if (sndRtxNxt == sndNxt) {
+            return;
+        }
+        int cwnd = cc.getCwnd();
+        for (TCPSegment seg : sndRtQueue) {
+            int seq = seg.getSeqNum();
+            if (seq < sndRtxNxt) {
+                continue;
+            }
+            if (sndRtxNxt - sndUna >= cwnd) {
+                break;
+            }
+            if (!sndScoreboard.isSacked(seq)) {
+                sndScoreboard.retransmitted(seq);
+                sndRetransmitted[seq % sndRetransmitted.length] = true;
+                printRetSeg(seg);
+                transmit(seg.retain());
+            }
+            sndRtxNxt = seq + 1;
+        }
+    }
+
+    /**
+     * Sends an ACK segment for the next in-order segment expected, advertising
+     * the free room in the receive queue. It covers any delayed ACK pending.
+     * In selective repeat mode it also reports the out-of-order segments held,
+     * as SACK blocks.
+     *
+     * @param sack sequence number of the out-of-order segment just received, whose
+     *             block is reported first, or -1
+     */
+    protected void sendAck(int sack) {
+        TCPSegment ack = TCPSegment.obtain();
+        ack.setAck(true);
+        ack.setSourcePort(localPort);
+        ack.setDestinationPort(remotePort);
+        ack.setSeqNum(sndNxt);
+        ack.setAckNum(rcvNxt);
+        addSackBlocks(ack, sack);
+        ack.setWnd(rcvAdvWnd = rcvWindow());
+        if (rcvAckPending > 1) {
+            acksSaved += rcvAckPending - 1;
+        }
+        clearAckPending();
+        acksSent++;
+        printSndSeg(ack);
+        transmit(ack);
+    }
+
+    /**
+     * Acknowledges a FIN, retransmitted ones included, with an ACK for the sequence
+     * number right after it, as the FIN takes up one.
+     *
+     * @param fin the FIN received
+     */
+    protected void sendFinAck(TCPSegment fin) {
+        TCPSegment ack = TCPSegment.obtain();
+        ack.setAck(true);
+        ack.setSourcePort(localPort);
+        ack.setDestinationPort(remotePort);
+        ack.setSeqNum(sndNxt);
+        ack.setAckNum(fin.getSeqNum() + 1);
+        ack.setWnd(rcvAdvWnd = rcvWindow());
+        printSndSeg(ack);
+        transmit(ack);
+    }
+
+    /**
+     * Stops retransmitting the FIN once the peer acknowledges it.
+     *
+     * @param rseg the received ACK segment
+     */
+    protected void processFinAck(TCPSegment rseg) {
+        if (sndFinPending && rseg.getAckNum() == sndNxt + 1) {
+            sndFinPending = false;
+            stopRTO();
         }
     }
 
     /**
-     * Sends a SYN segment.
+     * Hands a segment to the network, which is done holding the lock, without waiting
+     * for room on the link. Waiting there on the receive path would stop the receive
+     * thread from draining the peer's link while the peer waits the same way. On a
+     * thread of the stack a segment the full link cannot take is dropped, as a
+     * congested link would drop it, and recovered like any loss, by the next ACK, a
+     * probe or a timeout; on an application thread it is deferred until the lock is
+     * released. Segments queue behind those already deferred, keeping their order.
+     *
+     * @param seg the segment, whose reference is taken over
+     * @return false if the segment was dropped
+     */
+    protected boolean transmit(TCPSegment seg) {
+        if (sndOutCount == 0) {
+            if (network.trySend(seg)) {
+                return true;
+            }
+            if (Threads.isNetworkThread()) {
+                seg.release();
+                linkDrops++;
+                return false;
+            }
+        }
+        sndOut.add(seg);
+        sndOutCount++;
+        return true;
+    }
+
+    /**
+     * Adds SACK blocks describing the runs of out-of-order segments held: first the
+     * run containing the most recent arrival, as RFC 2018 requires, then the others
+     * in sequence order, as many as fit.
+     *
+     * @param ack    the ACK segment
+     * @param recent sequence number of the segment just received, or -1
+     */
+    protected void addSackBlocks(TCPSegment ack, int recent) {
+        if (rcvOutOfOrderCount == 0) {
+            return;
+        }
+        int end = rcvNxt + rcvOutOfOrder.length;
+        if (recent > rcvNxt) {
+            int left = recent, right = recent + 1;
+            while (left - 1 > rcvNxt && rcvOutOfOrder[(left - 1) % rcvOutOfOrder.length] != null) {
+                left--;
+            }
+            while (right < end && rcvOutOfOrder[right % rcvOutOfOrder.length] != null) {
+                right++;
+            }
+            ack.addSackBlock(left, right);
+        }
+        int seen = 0;
+        for (int seq = rcvNxt + 1; seq < end && seen < rcvOutOfOrderCount
+                && ack.getSackBlocks() < Const.SACK_BLOCKS; seq++) {
+            if (rcvOutOfOrder[seq % rcvOutOfOrder.length] == null) {
+                continue;
+            }
+            int left = seq;
+            while (seq < end && rcvOutOfOrder[seq % rcvOutOfOrder.length] != null) {
+                seq++;
+            }
+            seen += seq - left;
+            if (recent < left || recent >= seq) {
+                ack.addSackBlock(left, seq);
+            }
+        }
+    }
+
+    /**
+     * Acknowledges the data received so far on an outgoing data segment,
+     * saving the pure ACK that would otherwise be sent for it.
+     *
+     * @param seg the data segment about to be sent for the first time
+     */
+    protected void piggybackAck(TCPSegment seg) {
+        seg.setAck(true);
+        seg.setAckNum(rcvNxt);
+        seg.setWnd(rcvAdvWnd = rcvWindow());
+        acksSaved += rcvAckPending;
+        clearAckPending();
+    }
+
+    /**
+     * Forgets the delayed ACK, once an outgoing segment acknowledged the data.
+     */
+    protected void clearAckPending() {
+        if (rcvAckPending > 0) {
+            rcvAckPending = 0;
+            timerService.cancel(rcvAckTimer);
+        }
+    }
+
+    /**
+     * Sends a SYN segment carrying the initial sequence number. On the server side it
+     * also acknowledges the peer's SYN.
      *
      * @param ret whether the segment is a retransmission
      */
     protected void sendSyn(boolean ret) {
-        TCPSegment syn = new TCPSegment();
+        TCPSegment syn = TCPSegment.obtain();
         syn.setSyn(true);
         syn.setSourcePort(localPort);
         syn.setDestinationPort(remotePort);
-        network.send(syn);
+        syn.setSeqNum(sndIss);
+        if (!client) {
+            syn.setAck(true);
+            syn.setAckNum(rcvNxt);
+        }
+        syn.setWnd(rcvAdvWnd = rcvWindow());
         if (ret) {
             printRetSeg(syn);
         } else {
             printSndSeg(syn);
         }
+        transmit(syn);
     }
 
     /**
-     * Sends a FIN segment.
+     * Sends a FIN segment, carrying the sequence number after the last data segment.
      *
      * @param ret whether the segment is a retransmission
      */
     protected void sendFin(boolean ret) {
-        TCPSegment fin = new TCPSegment();
+        TCPSegment fin = TCPSegment.obtain();
         fin.setFin(true);
         fin.setDestinationPort(remotePort);
         fin.setSourcePort(localPort);
-        network.send(fin);
+        fin.setSeqNum(sndNxt);
         if (ret) {
             printRetSeg(fin);
         } else {
             printSndSeg(fin);
         }
+        transmit(fin);
     }
 
     /**
@@ -164,9 +2056,9 @@ public class TSocket extends TSocketBase {
      */
     protected void printRcvSeg(TCPSegment rseg) {
         if (client) {
-            log.printWhite("    rcvd: " + rseg);
+            log.print(Log.Level.DEBUG, Log.WHITE, "    rcvd: ", rseg);
         } else {
-            log.printWhite("\t\t\t\t\t\t\t    rcvd: " + rseg);
+            log.print(Log.Level.DEBUG, Log.WHITE, "\t\t\t\t\t\t\t    rcvd: ", rseg);
         }
     }
 
@@ -177,9 +2069,9 @@ public class TSocket extends TSocketBase {
      */
     protected void printSndSeg(TCPSegment rseg) {
         if (client) {
-            log.printWhite("    sent: " + rseg);
+            log.print(Log.Level.DEBUG, Log.WHITE, "    sent: ", rseg);
         } else {
-            log.printWhite("\t\t\t\t\t\t\t    sent: " + rseg);
+            log.print(Log.Level.DEBUG, Log.WHITE, "\t\t\t\t\t\t\t    sent: ", rseg);
         }
     }
 
@@ -190,9 +2082,9 @@ public class TSocket extends TSocketBase {
      */
     protected void printRetSeg(TCPSegment rseg) {
         if (rseg.getSourcePort() < 50) {
-            log.printGreen("    sent: " + rseg);
+            log.print(Log.Level.DEBUG, Log.GREEN, "    sent: ", rseg);
         } else {
-            log.printGreen("\t\t\t\t\t\t\t    sent: " + rseg);
+            log.print(Log.Level.DEBUG, Log.GREEN, "\t\t\t\t\t\t\t    sent: ", rseg);
         }
     }
 }
@@ -0,0 +1,103 @@
+package src.net;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Random;
+import src.util.Const;
+import src.util.TCPSegment;
+import src.util.TCPSegmentCodec;
+
+/**
+ * Round-trip fuzz check of {@link TCPSegmentCodec}, exiting with status 1 on the
+ * first mismatch: java src.net.TestCodec [rounds]
+ */
+public class TestCodec {
+
+    public static void main(String[] args) {
+        int rounds = (args.length > 0) ? Integer.parseInt(args[0]) : 100_000;
+        try {
+            fuzz(new Random(Const.SEED), rounds);
+        } catch (AssertionError e) {
+            System.out.println("Round-trip fuzz: " + e.getMessage());
+            System.exit(1);
+        }
+        System.out.println("Round-trip fuzz: OK");
+    }
+
+    /**
+     * Encodes and decodes random segments, checking every field survives the round trip
+     * and that corrupted packets are rejected.
+     */
+    private static void fuzz(Random rnd, int rounds) {
+        ByteBuffer heap = ByteBuffer.allocate(Const.MTU_ETHERNET + 64);
+        ByteBuffer direct = ByteBuffer.allocateDirect(Const.MTU_ETHERNET + 64);
+        byte[] payload = new byte[Const.MTU_ETHERNET - Const.IP_HEADER - Const.TCP_HEADER - 12];
+        TCPSegment out = new TCPSegment();
+        for (int i = 0; i < rounds; i++) {
+            TCPSegment seg = new TCPSegment();
+            seg.setSyn(rnd.nextBoolean());
+            seg.setPsh(rnd.nextBoolean());
+            seg.setAck(rnd.nextBoolean());
+            seg.setFin(rnd.nextBoolean());
+            seg.setSourcePort(rnd.nextInt(0x10000));
+            seg.setDestinationPort(rnd.nextInt(0x10000));
+            seg.setSeqNum(rnd.nextInt());
+            seg.setAckNum(rnd.nextInt());
+            seg.setWnd(rnd.nextInt(0x10000));
+            for (int b = rnd.nextInt(Const.SACK_BLOCKS + 1); b > 0; b--) {
+                int left = rnd.nextInt(Integer.MAX_VALUE - 64);
+                seg.addSackBlock(left, left + 1 + rnd.nextInt(64));
+            }
+            if (rnd.nextBoolean()) {
+                int len = rnd.nextInt(payload.length + 1);
+                rnd.nextBytes(payload);
+                seg.setData(payload, 0, len);
+            }
+            ByteBuffer buf = rnd.nextBoolean() ? heap : direct;
+            buf.clear();
+            int start = rnd.nextInt(32);
+            buf.position(start);
+            TCPSegmentCodec.encode(seg, buf);
+            check(buf.position() - start == TCPSegmentCodec.encodedLength(seg), "length", i);
+            buf.flip().position(start);
+            TCPSegmentCodec.decode(buf, out);
+            check(!buf.hasRemaining(), "position", i);
+            check(seg.isSyn() == out.isSyn() && seg.isPsh() == out.isPsh()
+                    && seg.isAck() == out.isAck() && seg.isFin() == out.isFin(), "flags", i);
+            check(seg.getSourcePort() == out.getSourcePort()
+                    && seg.getDestinationPort() == out.getDestinationPort(), "ports", i);
+            check(seg.getSeqNum() == out.getSeqNum() && seg.getAckNum() == out.getAckNum()
+                    && seg.getWnd() == out.getWnd(), "numbers", i);
+            check(seg.getSackBlocks() == out.getSackBlocks(), "SACK blocks", i);
+            for (int b = 0; b < seg.getSackBlocks(); b++) {
+                check(seg.getSackLeft(b) == out.getSackLeft(b) && seg.getSackRight(b) == out.getSackRight(b),
+                        "SACK block", i);
+            }
+            check(seg.getDataLength() == out.getDataLength() && (seg.getDataLength() == 0 || Arrays.equals(
+                    seg.getDataArray(), seg.getDataOffset(), seg.getDataOffset() + seg.getDataLength(),
+                    out.getDataArray(), out.getDataOffset(), out.getDataOffset() + out.getDataLength())),
+                    "payload", i);
+
+            // Flipping any single bit must be caught by a checksum or a header check
+            int bit = rnd.nextInt((buf.limit() - start) * 8);
+            int pos = start + bit / 8;
+            buf.put(pos, (byte) (buf.get(pos) ^ (1 << (bit % 8))));
+            buf.position(start);
+            boolean rejected = false;
+            try {
+                TCPSegmentCodec.decode(buf, out);
+            } catch (RuntimeException e) {
+                rejected = true;
+            }
+            check(rejected, "corruption not detected", i);
+            out.release();
+            out = new TCPSegment();
+        }
+    }
+
+    private static void check(boolean ok, String what, int round) {
+        if (!ok) {
+            throw new AssertionError("Round-trip mismatch (" + what + ") in round " + round);
+        }
+    }
+}
@@ -0,0 +1,191 @@
+package src.net;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import src.util.Log;
+import src.util.SimNetMonitor;
+import src.util.SimNet_FullDuplex;
+import src.util.TCPSegment;
+
+/**
+ * Selective repeat transfers through deterministic loss patterns, checking that every
+ * dropped segment is resent exactly once and that no segment the receiver already
+ * holds is sent again. Exits with status 1 if any pattern fails: java src.net.TestSack
+ */
+public class TestSack {
+
+    /** Server port */
+    private static final int PORT = 80;
+
+    /** Send window of the transfers */
+    private static final int WINDOW = 32;
+
+    /** Segments per transfer */
+    private static final int SEGMENTS = 96;
+
+    /** Data segments dropped on their first transmission, one pattern per row */
+    private static final int[][] PATTERNS = {
+            {},
+            {5},
+            {5, 6, 7},
+            {5, 9, 13, 17},
+            {5, 9, 13, 17, 21, 25},
+            {0, 31, 32, 63, 64, 95},
+            {10, 11, 20, 21, 30, 31, 40, 41, 50, 51},
+    };
+
+    public static void main(String[] args) {
+        Log.getLog().setLevel(Log.Level.OFF);
+        System.out.printf("%-40s %8s %8s %10s%n", "dropped", "ms", "resent", "redundant");
+        boolean ok = true;
+        for (int[] pattern : PATTERNS) {
+            DropLink.Stats stats = new DropLink.Stats(pattern);
+            SimNet_FullDuplex net = new SimNet_FullDuplex(0.0, 0.0, () -> new DropLink(stats));
+            TServerSocket server = new TServerSocket(new Protocol(net.getSrvEnd()), PORT);
+            SackSocket client = new SackSocket(new Protocol(net.getCltEnd()), PORT + 1, PORT);
+            client.setTransferMode(TSocket.SELECTIVE_REPEAT);
+            client.setSendWindow(WINDOW);
+            client.connect();
+            TSocket accepted = server.accept();
+            accepted.setTransferMode(TSocket.SELECTIVE_REPEAT);
+            Thread sink = new Thread(() -> {
+                byte[] buf = new byte[64 * 1024];
+                while (accepted.receiveData(buf, 0, buf.length) >= 0) {
+                    // Discard
+                }
+            }, "TestSack-sink");
+            sink.setDaemon(true);
+            sink.start();
+
+            byte[] chunk = new byte[client.getMSS()];
+            long start = System.nanoTime();
+            for (int i = 0; i < SEGMENTS; i++) {
+                client.sendData(chunk, 0, chunk.length);
+            }
+            client.awaitAcked();
+            long ms = (System.nanoTime() - start) / 1_000_000;
+            System.out.printf("%-40s %8d %8d %10d%n", Arrays.toString(pattern), ms,
+                    stats.resent(), stats.redundant());
+            // A link that drops nothing resends nothing, which must not pass
+            ok &= stats.dropped() == pattern.length && stats.resent() == stats.dropped()
+                    && stats.redundant() == 0;
+        }
+        System.out.println(ok ? "Every dropped segment resent once: OK"
+                : "Dropped segments not resent exactly once");
+        // Protocol receiver threads are not daemons
+        System.exit(ok ? 0 : 1);
+    }
+
+    /**
+     * Client socket that can wait until all the data sent is acknowledged.
+     */
+    static class SackSocket extends TSocket {
+
+        SackSocket(Protocol p, int localPort, int remotePort) {
+            super(p, localPort, remotePort);
+        }
+
+        void awaitAcked() {
+            lock.lock();
+            try {
+                while (!sndRtQueue.empty()) {
+                    appCV.awaitUninterruptibly();
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Link dropping the first transmission of chosen data segments and counting
+     * how often every data segment is sent and delivered.
+     */
+    static class DropLink extends SimNetMonitor {
+
+        private final Stats stats;
+
+        DropLink(Stats stats) {
+            this.stats = stats;
+        }
+
+        @Override
+        public void send(TCPSegment seg) {
+            if (!dropped(seg)) {
+                super.send(seg);
+            }
+        }
+
+        @Override
+        public boolean trySend(TCPSegment seg) {
+            mon.lock();
+            try {
+                // A segment the full queue refuses is not sent, so it must not be counted
+                if (queue.full()) {
+                    return false;
+                }
+                return dropped(seg) || super.trySend(seg);
+            } finally {
+                mon.unlock();
+            }
+        }
+
+        /**
+         * Records a data segment and releases it if it is to be dropped.
+         */
+        private boolean dropped(TCPSegment seg) {
+            if (seg.isPsh() && seg.getDataLength() > 0 && stats.drop(seg.getSeqNum())) {
+                seg.release();
+                return true;
+            }
+            return false;
+        }
+
+        /**
+         * Per-pattern counters shared by both directions.
+         */
+        static class Stats {
+
+            private final Set<Integer> pending = new HashSet<>();
+            private final Set<Integer> sent = new HashSet<>();
+            private final Set<Integer> delivered = new HashSet<>();
+            private int dropped, resent, redundant;
+
+            Stats(int[] pattern) {
+                for (int seq : pattern) {
+                    pending.add(seq);
+                }
+            }
+
+            /**
+             * Records a data segment and tells whether to drop it.
+             */
+            synchronized boolean drop(int seq) {
+                if (!sent.add(seq)) {
+                    resent++;
+                }
+                if (pending.remove(seq)) {
+                    dropped++;
+                    return true;
+                }
+                if (!delivered.add(seq)) {
+                    redundant++;
+                }
+                return false;
+            }
+
+            synchronized int dropped() {
+                return dropped;
+            }
+
+            synchronized int resent() {
+                return resent;
+            }
+
+            synchronized int redundant() {
+                return redundant;
+            }
+        }
+    }
+}
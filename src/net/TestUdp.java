@@ -0,0 +1,24 @@
+package src.net;
+
+import src.util.SimNet_Udp;
+
+/**
+ * Runs the server or the client host of {@link Test} in its own process,
+ * connected through UDP datagrams over the loopback interface.
+ * Start "java src.net.TestUdp server" first, then "java src.net.TestUdp client".
+ */
+public class TestUdp {
+
+    /** UDP ports of the server and client ends */
+    public static final int SRV_UDP_PORT = 9080, CLT_UDP_PORT = 9010;
+
+    public static void main(String[] args) {
+        if (args.length == 1 && args[0].equals("server")) {
+            new Thread(new HostSrv(new SimNet_Udp(SRV_UDP_PORT, CLT_UDP_PORT))).start();
+        } else if (args.length == 1 && args[0].equals("client")) {
+            new Thread(new HostClt(new SimNet_Udp(CLT_UDP_PORT, SRV_UDP_PORT))).start();
+        } else {
+            System.err.println("Usage: java src.net.TestUdp server|client");
+        }
+    }
+}
@@ -0,0 +1,130 @@
+package src.util;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Pool of fixed-size, reference-counted payload buffers.
+ * In leak-detection mode every acquired buffer records its allocation site
+ * and is tracked until released, so tests can check that nothing leaked.
+ */
+public class BufferPool {
+
+    /** Default pool sized for MTU payloads */
+    private static final BufferPool DEFAULT = new BufferPool(Const.MTU_ETHERNET, Const.BUFFER_POOL_SIZE);
+
+    /** Size of every buffer */
+    private final int bufferSize;
+
+    /** Idle buffers */
+    private final Pool<PooledBuffer> free;
+
+    /** Number of buffers acquired and not yet released */
+    private final AtomicInteger outstanding;
+
+    /** Buffers currently acquired, only tracked in leak-detection mode */
+    private final Set<PooledBuffer> tracked;
+
+    /** Whether leak detection is enabled */
+    private volatile boolean leakDetection;
+
+    /**
+     * Constructs a pool.
+     *
+     * @param bufferSize size of every buffer in bytes
+     * @param capacity   maximum number of idle buffers kept
+     */
+    public BufferPool(int bufferSize, int capacity) {
+        this.bufferSize = bufferSize;
+        this.free = new Pool<>(capacity, () -> new PooledBuffer(this, bufferSize));
+        this.outstanding = new AtomicInteger();
+        this.tracked = Collections.synchronizedSet(Collections.newSetFromMap(new IdentityHashMap<>()));
+    }
+
+    /**
+     * Returns the default pool, whose buffers hold an Ethernet MTU.
+     *
+     * @return the default BufferPool instance
+     */
+    public static BufferPool getDefault() {
+        return DEFAULT;
+    }
+
+    /**
+     * Returns the size of the buffers of this pool.
+     *
+     * @return the buffer size in bytes
+     */
+    public int getBufferSize() {
+        return bufferSize;
+    }
+
+    /**
+     * Acquires a buffer holding a single reference.
+     *
+     * @return a buffer ready for use
+     */
+    public PooledBuffer acquire() {
+        PooledBuffer b = free.take();
+        b.reset();
+        outstanding.incrementAndGet();
+        if (leakDetection) {
+            b.allocSite = new Throwable("Buffer acquired here");
+            tracked.add(b);
+        }
+        return b;
+    }
+
+    /**
+     * Takes back a buffer whose last reference was released.
+     *
+     * @param b the released buffer
+     */
+    void recycle(PooledBuffer b) {
+        outstanding.decrementAndGet();
+        if (b.allocSite != null) {
+            tracked.remove(b);
+            b.allocSite = null;
+        }
+        free.offer(b);
+    }
+
+    /**
+     * Enables or disables leak detection for buffers acquired from now on.
+     *
+     * @param enabled true to record allocation sites
+     */
+    public void setLeakDetection(boolean enabled) {
+        leakDetection = enabled;
+    }
+
+    /**
+     * Returns the number of buffers acquired and not yet released.
+     *
+     * @return the number of outstanding buffers
+     */
+    public int outstanding() {
+        return outstanding.get();
+    }
+
+    /**
+     * Returns the allocation sites of the tracked buffers still outstanding.
+     *
+     * @return allocation sites of possibly leaked buffers
+     */
+    public List<Throwable> leaks() {
+        List<Throwable> sites = new ArrayList<>();
+        synchronized (tracked) {
+            for (PooledBuffer b : tracked) {
+                if (b.allocSite != null) {
+                    sites.add(b.allocSite);
+                }
+            }
+        }
+        return sites;
+    }
+}
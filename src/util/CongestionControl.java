@@ -0,0 +1,66 @@
+package src.util;
+
+/**
+ * Sender-side congestion control algorithm, consulted by a socket to limit how many
+ * unacknowledged segments it injects into the network.
+ * Windows are counted in segments. A socket calls every method with its lock held,
+ * so implementations need no synchronization of their own.
+ */
+public interface CongestionControl {
+
+    /**
+     * Retrieves the congestion window.
+     *
+     * @return the congestion window in segments, at least 1
+     */
+    int getCwnd();
+
+    /**
+     * Retrieves the slow start threshold.
+     *
+     * @return the slow start threshold in segments
+     */
+    int getSsthresh();
+
+    /**
+     * Tells whether a loss is being repaired by fast recovery.
+     *
+     * @return true while in fast recovery
+     */
+    boolean inRecovery();
+
+    /**
+     * Called when an ACK acknowledges new data.
+     *
+     * @param ackNum the cumulative acknowledgement number
+     * @param acked  number of segments newly acknowledged
+     */
+    void onAck(int ackNum, int acked);
+
+    /**
+     * Called for every duplicate ACK.
+     */
+    void onDupAck();
+
+    /**
+     * Called when a loss is detected without a timeout, e.g. after duplicate ACKs.
+     *
+     * @param inFlight number of segments in flight when the loss was detected
+     * @param sndNxt   sequence number of the next segment to send
+     */
+    void onLoss(int inFlight, int sndNxt);
+
+    /**
+     * Called when the retransmission timer expires.
+     *
+     * @param inFlight number of segments in flight when the timer expired
+     */
+    void onTimeout(int inFlight);
+
+    /**
+     * Called with every valid round-trip time sample.
+     *
+     * @param rttMs the measured round-trip time in milliseconds
+     */
+    void onRttSample(double rttMs);
+}
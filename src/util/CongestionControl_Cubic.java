@@ -0,0 +1,85 @@
+package src.util;
+
+/**
+ * CUBIC congestion control (RFC 9438). Above the slow start threshold the window
+ * follows a cubic function of the time since the last reduction, centred on the
+ * window at which that loss happened, but never grows slower than Reno would.
+ * Fast recovery is inherited from NewReno.
+ */
+public class CongestionControl_Cubic extends CongestionControl_NewReno {
+
+    /** Cubic scaling constant, in segments per cubed second */
+    protected static final double C = 0.4;
+
+    /** Multiplicative decrease factor */
+    protected static final double BETA = 0.7;
+
+    /** Window before the last reduction, in segments */
+    protected double wMax;
+
+    /** Time (ns) the current growth epoch started, or 0 before the first ACK of an epoch */
+    protected long epochStart;
+
+    /** Time (s) the cubic function takes to grow back to its origin */
+    protected double k;
+
+    /** Window the cubic function is centred on */
+    protected double origin;
+
+    /** Window Reno would have reached in the current epoch */
+    protected double wEst;
+
+    /** Smallest RTT sample seen (ms) */
+    protected double minRtt = -1;
+
+    @Override
+    public void onRttSample(double rttMs) {
+        if (minRtt < 0 || rttMs < minRtt) {
+            minRtt = rttMs;
+        }
+    }
+
+    @Override
+    public void onTimeout(int inFlight) {
+        super.onTimeout(inFlight);
+        epochStart = 0;
+    }
+
+    @Override
+    protected void increase(int acked) {
+        if (cwnd < ssthresh) {
+            super.increase(acked);
+            return;
+        }
+        long now = System.nanoTime();
+        if (epochStart == 0) {
+            epochStart = now;
+            if (cwnd < wMax) {
+                k = Math.cbrt((wMax - cwnd) / C);
+                origin = wMax;
+            } else {
+                k = 0;
+                origin = cwnd;
+            }
+            wEst = cwnd;
+        }
+        double t = (now - epochStart) / 1e9 + Math.max(minRtt, 0) / 1e3;
+        double target = origin + C * Math.pow(t - k, 3);
+        target = Math.min(Math.max(target, cwnd), 1.5 * cwnd);
+        cwnd += (target - cwnd) * acked / cwnd;
+
+        // Reno-friendly region: grow at least as fast as standard congestion avoidance
+        wEst += 3 * (1 - BETA) / (1 + BETA) * acked / cwnd;
+        if (wEst > cwnd) {
+            cwnd = wEst;
+        }
+    }
+
+    @Override
+    protected int reduce(int inFlight) {
+        // Fast convergence: yield bandwidth when the window keeps shrinking
+        wMax = (cwnd < wMax) ? cwnd * (1 + BETA) / 2 : cwnd;
+        epochStart = 0;
+        return Math.max((int) (cwnd * BETA), 2);
+    }
+}
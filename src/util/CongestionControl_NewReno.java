@@ -0,0 +1,34 @@
+package src.util;
+
+/**
+ * NewReno congestion control (RFC 6582): fast recovery lasts until every segment
+ * outstanding at the loss is acknowledged, so several losses in one window are
+ * repaired without a timeout. A partial ACK leaves the algorithm in recovery,
+ * telling the sender to retransmit the next unacknowledged segment.
+ */
+public class CongestionControl_NewReno extends CongestionControl_Reno {
+
+    /** Highest sequence number outstanding when fast recovery started, plus one */
+    protected int recover;
+
+    @Override
+    public void onAck(int ackNum, int acked) {
+        if (!recovery) {
+            increase(acked);
+        } else if (ackNum >= recover) {
+            recovery = false;
+            cwnd = ssthresh;
+        } else {
+            // Partial ACK: deflate by the data acknowledged, then allow the retransmission
+            cwnd = Math.max(cwnd - acked + 1, 1);
+        }
+    }
+
+    @Override
+    public void onLoss(int inFlight, int sndNxt) {
+        if (!recovery) {
+            recover = sndNxt;
+        }
+        super.onLoss(inFlight, sndNxt);
+    }
+}
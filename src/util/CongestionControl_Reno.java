@@ -0,0 +1,109 @@
+package src.util;
+
+/**
+ * Reno congestion control (RFC 5681): slow start, congestion avoidance, and fast
+ * recovery that ends on the first ACK of new data.
+ */
+public class CongestionControl_Reno implements CongestionControl {
+
+    /** Maximum window growth per ACK in slow start (appropriate byte counting, RFC 3465) */
+    protected static final int ABC_LIMIT = 2;
+
+    /** Congestion window in segments, fractional during congestion avoidance */
+    protected double cwnd;
+
+    /** Slow start threshold in segments */
+    protected int ssthresh;
+
+    /** Whether fast recovery is in progress */
+    protected boolean recovery;
+
+    /**
+     * Constructs the algorithm with the initial congestion window.
+     */
+    public CongestionControl_Reno() {
+        cwnd = Const.SND_CWND_INIT;
+        ssthresh = Integer.MAX_VALUE;
+    }
+
+    @Override
+    public int getCwnd() {
+        return Math.max(1, (int) cwnd);
+    }
+
+    @Override
+    public int getSsthresh() {
+        return ssthresh;
+    }
+
+    @Override
+    public boolean inRecovery() {
+        return recovery;
+    }
+
+    @Override
+    public void onAck(int ackNum, int acked) {
+        if (recovery) {
+            recovery = false;
+            cwnd = ssthresh;
+        } else {
+            increase(acked);
+        }
+    }
+
+    @Override
+    public void onDupAck() {
+        if (recovery) {
+            cwnd++;
+        }
+    }
+
+    @Override
+    public void onLoss(int inFlight, int sndNxt) {
+        if (!recovery) {
+            ssthresh = reduce(inFlight);
+            cwnd = ssthresh + 3;
+            recovery = true;
+        }
+    }
+
+    @Override
+    public void onTimeout(int inFlight) {
+        ssthresh = reduce(inFlight);
+        cwnd = 1;
+        recovery = false;
+    }
+
+    @Override
+    public void onRttSample(double rttMs) {
+    }
+
+    /**
+     * Opens the window: exponentially below the threshold, by about one segment
+     * per window above it.
+     *
+     * @param acked number of segments newly acknowledged
+     */
+    protected void increase(int acked) {
+        if (cwnd < ssthresh) {
+            cwnd = Math.min(cwnd + Math.min(acked, ABC_LIMIT), ssthresh);
+        } else {
+            cwnd += (double) acked / cwnd;
+        }
+    }
+
+    /**
+     * Computes the slow start threshold after a loss.
+     *
+     * @param inFlight number of segments in flight
+     * @return the new slow start threshold
+     */
+    protected int reduce(int inFlight) {
+        return Math.max(inFlight / 2, 2);
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + "[cwnd=" + getCwnd() + ", ssthresh=" + ssthresh + "]";
+    }
+}
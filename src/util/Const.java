@@ -19,18 +19,57 @@ public interface Const {
     /** Probability of ACK packet loss (0.0 - 1.0) */
     double LOSS_RATE_ACK = 0.2;
 
+    /** Number of worker lanes processing received segments per protocol */
+    int RCV_LANES = 1;
+
+    /** Maximum segments queued on each receive lane */
+    int RCV_LANE_QUEUE_SIZE = 100;
+
+    /** Whether protocols run their threads as virtual threads when the JVM supports them */
+    boolean VIRTUAL_THREADS = false;
+
     /** Ethernet Maximum Transmission Unit in bytes */
     int MTU_ETHERNET = 1500;
 
+    /** Maximum idle payload buffers kept by the default buffer pool */
+    int BUFFER_POOL_SIZE = 1024;
+
+    /** Maximum idle segments kept by the segment pool */
+    int SEGMENT_POOL_SIZE = 1024;
+
+    /** Maximum SACK blocks carried by a segment, as many as fit in the TCP options */
+    int SACK_BLOCKS = 4;
+
     /** IP header size in bytes */
     int IP_HEADER = 20;
 
     /** TCP header size in bytes */
     int TCP_HEADER = 20;
 
-    /** Retransmission timeout duration (ms) */
+    /** Initial retransmission timeout, before any RTT sample (ms) */
     int SND_RTO = 500;
 
+    /** Lower bound of the adaptive retransmission timeout (ms) */
+    int SND_RTO_MIN = 20;
+
+    /** Upper bound of the adaptive retransmission timeout (ms) */
+    int SND_RTO_MAX = 60000;
+
+    /** Tick duration of the shared timer wheel (ms) */
+    int TIMER_TICK = 10;
+
+    /** Number of slots in the shared timer wheel */
+    int TIMER_WHEEL_SIZE = 512;
+
+    /** Default send window (segments) */
+    int SND_WND = 10;
+
+    /** Duplicate ACKs that trigger a fast retransmit */
+    int DUP_ACK_THRESH = 3;
+
+    /** Initial congestion window (segments) */
+    int SND_CWND_INIT = 3;
+
     /** Number of segments to transmit */
     int SND_NUM = 5;
 
@@ -40,6 +79,12 @@ public interface Const {
     /** Delay between segment transmissions (ms) */
     int SND_INTERVAL = 100;
 
+    /** Largest file region memory-mapped at once by a file transfer (bytes) */
+    int TRANSFER_MAP_SIZE = 64 << 20;
+
+    /** Delay before acknowledging a lone in-order segment (ms), 0 to acknowledge every segment */
+    int ACK_DELAY = 10;
+
     /** Maximum size of receiver buffer */
     int RCV_QUEUE_SIZE = 50;
 
@@ -51,4 +96,13 @@ public interface Const {
 
     /** Maximum pending connections in server queue */
     int LISTEN_QUEUE_SIZE = 10;
+
+    /** Maximum half-open connections tracked per listener before SYN cookies are used */
+    int SYN_BACKLOG_SIZE = 64;
+
+    /** SYN-ACK retransmissions before a half-open connection is evicted */
+    int SYN_RETRIES = 3;
+
+    /** FIN retransmissions before the FIN is given up as acknowledged */
+    int FIN_RETRIES = 8;
 }
\ No newline at end of file
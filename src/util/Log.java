@@ -1,13 +1,24 @@
 package src.util;
 
+import java.util.concurrent.locks.Condition;
 import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
 
 /**
  * Thread-safe utility class for colored console logging.
  * Implements the singleton pattern to ensure a single logging instance.
  * Uses ANSI escape codes for text coloring and formatting.
+ * Messages below the current level are discarded before being built, and an
+ * optional asynchronous mode hands messages to a background writer.
  */
 public class Log {
+
+    /** Message severity, in increasing order */
+    public enum Level { DEBUG, INFO, WARN, OFF }
+
+    /** What to do with a message when the asynchronous buffer is full */
+    public enum OverflowPolicy { DROP, BLOCK }
+
     /** Reset all text formatting */
     public static final String RESET = "\033[0m";
 
@@ -24,6 +35,12 @@ public class Log {
     /** Lock for thread-safe logging */
     private final ReentrantLock lock;
 
+    /** Minimum level of the messages printed */
+    private volatile Level level = Level.DEBUG;
+
+    /** Background writer, null in synchronous mode */
+    private volatile AsyncWriter writer;
+
     /** Singleton instance */
     private static volatile Log instance;
 
@@ -56,13 +73,96 @@ public class Log {
         return instance;
     }
 
+    /**
+     * Sets the minimum level of the messages printed.
+     *
+     * @param level the new minimum level
+     */
+    public void setLevel(Level level) {
+        this.level = level;
+    }
+
+    /**
+     * Tells whether messages of the given level are printed.
+     *
+     * @param l the level to check
+     * @return true if messages of that level are printed
+     */
+    public boolean isEnabled(Level l) {
+        return l.compareTo(level) >= 0 && l != Level.OFF;
+    }
+
+    /**
+     * Switches to asynchronous mode: messages are queued in a bounded buffer
+     * and printed in batches by a background thread.
+     * Pending messages are flushed when the JVM exits.
+     *
+     * @param capacity maximum number of queued messages
+     * @param policy   whether to drop messages or block the caller when the buffer is full
+     */
+    public void setAsync(int capacity, OverflowPolicy policy) {
+        lock.lock();
+        try {
+            if (writer == null) {
+                AsyncWriter w = new AsyncWriter(capacity, policy);
+                Thread t = new Thread(w, "Log");
+                t.setDaemon(true);
+                t.start();
+                Runtime.getRuntime().addShutdownHook(new Thread(w::flush));
+                writer = w;
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns the number of messages dropped because the asynchronous buffer was full.
+     *
+     * @return the number of dropped messages
+     */
+    public long getDropped() {
+        AsyncWriter w = writer;
+        return (w == null) ? 0 : w.dropped;
+    }
+
+    /**
+     * Prints a message built lazily, only if its level is enabled.
+     *
+     * @param l       the message level
+     * @param color   the color code to print the message with
+     * @param message supplier of the message
+     */
+    public void print(Level l, String color, Supplier<String> message) {
+        if (isEnabled(l)) {
+            out(color + message.get() + RESET);
+        }
+    }
+
+    /**
+     * Prints a prefix followed by an argument, only if the level is enabled.
+     * Nothing is built or allocated when the level is disabled.
+     *
+     * @param l      the message level
+     * @param color  the color code to print the message with
+     * @param prefix the text printed before the argument
+     * @param arg    the argument, converted with toString
+     */
+    public void print(Level l, String color, String prefix, Object arg) {
+        if (isEnabled(l)) {
+            out(color + prefix + arg + RESET);
+        }
+    }
+
     /**
      * Prints a message in red color.
      *
      * @param message the message to print
      */
     public void printRed(String message) {
-        out(RED + message + RESET);
+        if (isEnabled(Level.WARN)) {
+            out(RED + message + RESET);
+        }
     }
 
     /**
@@ -71,7 +171,9 @@ public class Log {
      * @param message the message to print
      */
     public void printBlack(String message) {
-        out(BLACK + message + RESET);
+        if (isEnabled(Level.INFO)) {
+            out(BLACK + message + RESET);
+        }
     }
 
     /**
@@ -80,7 +182,9 @@ public class Log {
      * @param message the message to print
      */
     public void printBlue(String message) {
-        out(BLUE + message + RESET);
+        if (isEnabled(Level.INFO)) {
+            out(BLUE + message + RESET);
+        }
     }
 
     /**
@@ -89,7 +193,9 @@ public class Log {
      * @param message the message to print
      */
     public void printPurple(String message) {
-        out(PURPLE + message + RESET);
+        if (isEnabled(Level.INFO)) {
+            out(PURPLE + message + RESET);
+        }
     }
 
     /**
@@ -98,7 +204,9 @@ public class Log {
      * @param message the message to print
      */
     public void printGreen(String message) {
-        out(GREEN + message + RESET);
+        if (isEnabled(Level.INFO)) {
+            out(GREEN + message + RESET);
+        }
     }
 
     /**
@@ -107,16 +215,23 @@ public class Log {
      * @param message the message to print
      */
     public void printWhite(String message) {
-        out(WHITE + message + RESET);
+        if (isEnabled(Level.INFO)) {
+            out(WHITE + message + RESET);
+        }
     }
 
     /**
      * Thread-safe implementation of console output.
-     * Adds a small delay to prevent timestamp collisions.
+     * In synchronous mode, adds a small delay to prevent timestamp collisions.
      *
      * @param message the formatted message to print
      */
     private void out(String message) {
+        AsyncWriter w = writer;
+        if (w != null) {
+            w.put(message);
+            return;
+        }
         lock.lock();
         try {
             Thread.sleep(1);
@@ -128,4 +243,90 @@ public class Log {
             lock.unlock();
         }
     }
-}
\ No newline at end of file
+
+    /**
+     * Bounded message buffer drained in batches by a single background thread.
+     */
+    private static class AsyncWriter implements Runnable {
+
+        private final CircularQueue<String> queue;
+        private final OverflowPolicy policy;
+        private final ReentrantLock mon;
+        private final Condition notEmpty, notFull;
+        private final ReentrantLock writeLock;
+        private final StringBuilder batch;
+        private volatile long dropped;
+
+        AsyncWriter(int capacity, OverflowPolicy policy) {
+            this.queue = new CircularQueue<>(capacity);
+            this.policy = policy;
+            this.mon = new ReentrantLock();
+            this.notEmpty = mon.newCondition();
+            this.notFull = mon.newCondition();
+            this.writeLock = new ReentrantLock();
+            this.batch = new StringBuilder();
+        }
+
+        /**
+         * Queues a message, dropping it or waiting if the buffer is full.
+         */
+        void put(String message) {
+            mon.lock();
+            try {
+                while (queue.full()) {
+                    if (policy == OverflowPolicy.DROP) {
+                        dropped++;
+                        return;
+                    }
+                    notFull.awaitUninterruptibly();
+                }
+                queue.put(message);
+                if (queue.size() == 1) {
+                    notEmpty.signal();
+                }
+            } finally {
+                mon.unlock();
+            }
+        }
+
+        @Override
+        public void run() {
+            while (true) {
+                mon.lock();
+                try {
+                    while (queue.empty()) {
+                        notEmpty.awaitUninterruptibly();
+                    }
+                } finally {
+                    mon.unlock();
+                }
+                flush();
+            }
+        }
+
+        /**
+         * Writes every queued message with a single write and flush.
+         */
+        void flush() {
+            writeLock.lock();
+            try {
+                mon.lock();
+                try {
+                    while (!queue.empty()) {
+                        batch.append(queue.get()).append(System.lineSeparator());
+                    }
+                    notFull.signalAll();
+                } finally {
+                    mon.unlock();
+                }
+                if (batch.length() > 0) {
+                    System.out.print(batch);
+                    System.out.flush();
+                    batch.setLength(0);
+                }
+            } finally {
+                writeLock.unlock();
+            }
+        }
+    }
+}
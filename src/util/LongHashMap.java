@@ -0,0 +1,248 @@
+package src.util;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Open-addressing hash map keyed by primitive longs.
+ * Lookups are lock-free; insertions and removals are serialized by an internal lock.
+ *
+ * <p>A slot, once claimed by a key, only ever holds that key or a tombstone until the
+ * table is rehashed, so a reader that matches a key can never observe a value that
+ * belongs to another key. Rehashing publishes a fresh table and drops tombstones.
+ *
+ * @param <V> the type of mapped values
+ */
+public class LongHashMap<V> {
+
+    /** Marks a slot that has never been used */
+    private static final long EMPTY = Long.MIN_VALUE;
+
+    /** Marks a slot whose key has been removed */
+    private static final long TOMBSTONE = Long.MIN_VALUE + 1;
+
+    /** Current table, replaced as a whole on rehash */
+    private volatile Table<V> table;
+
+    /** Lock serializing writers */
+    private final ReentrantLock lock;
+
+    /** Number of live entries */
+    private int size;
+
+    /** Number of tombstones in the current table */
+    private int tombstones;
+
+    /**
+     * Constructs an empty map with a small default capacity.
+     */
+    public LongHashMap() {
+        this(16);
+    }
+
+    /**
+     * Constructs an empty map sized for the given number of entries.
+     *
+     * @param expected the expected number of entries
+     */
+    public LongHashMap(int expected) {
+        table = new Table<>(tableSizeFor(expected * 2));
+        lock = new ReentrantLock();
+    }
+
+    /**
+     * Packs two 32-bit values into a single key.
+     *
+     * @param high value stored in the upper 32 bits
+     * @param low  value stored in the lower 32 bits
+     * @return the packed key
+     */
+    public static long pack(int high, int low) {
+        return ((long) high << 32) | (low & 0xFFFFFFFFL);
+    }
+
+    /**
+     * Returns the value mapped to the given key without taking any lock.
+     *
+     * @param key the key to look up
+     * @return the mapped value, or null if none
+     */
+    public V get(long key) {
+        checkKey(key);
+        Table<V> t = table;
+        int mask = t.keys.length() - 1;
+        for (int i = mix(key) & mask, n = 0; n <= mask; i = (i + 1) & mask, n++) {
+            long k = t.keys.get(i);
+            if (k == key) {
+                return t.values.get(i);
+            }
+            if (k == EMPTY) {
+                return null;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Maps the given key to the given value, replacing any previous mapping.
+     *
+     * @param key   the key
+     * @param value the value, must not be null
+     * @return the previous value, or null if none
+     */
+    public V put(long key, V value) {
+        checkKey(key);
+        if (value == null) {
+            throw new NullPointerException("Value cannot be null");
+        }
+        lock.lock();
+        try {
+            Table<V> t = table;
+            int mask = t.keys.length() - 1;
+            int free = -1;
+            for (int i = mix(key) & mask, n = 0; n <= mask; i = (i + 1) & mask, n++) {
+                long k = t.keys.get(i);
+                if (k == key) {
+                    V old = t.values.get(i);
+                    t.values.set(i, value);
+                    return old;
+                }
+                if (k == EMPTY) {
+                    free = i;
+                    break;
+                }
+            }
+            if (free < 0 || (size + tombstones + 1) * 4 > t.keys.length() * 3) {
+                rehash(size + 1);
+                return put(key, value);
+            }
+            // Publish the value before the key so readers never see a key without it
+            t.values.set(free, value);
+            t.keys.set(free, key);
+            size++;
+            return null;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Removes the mapping for the given key if it is mapped to the given value.
+     *
+     * @param key   the key
+     * @param value the expected value
+     * @return true if the mapping was removed
+     */
+    public boolean remove(long key, V value) {
+        checkKey(key);
+        lock.lock();
+        try {
+            Table<V> t = table;
+            int mask = t.keys.length() - 1;
+            for (int i = mix(key) & mask, n = 0; n <= mask; i = (i + 1) & mask, n++) {
+                long k = t.keys.get(i);
+                if (k == key) {
+                    if (value != null && t.values.get(i) != value) {
+                        return false;
+                    }
+                    t.keys.set(i, TOMBSTONE);
+                    t.values.set(i, null);
+                    size--;
+                    tombstones++;
+                    return true;
+                }
+                if (k == EMPTY) {
+                    return false;
+                }
+            }
+            return false;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Removes the mapping for the given key.
+     *
+     * @param key the key
+     * @return true if a mapping was removed
+     */
+    public boolean remove(long key) {
+        return remove(key, null);
+    }
+
+    /**
+     * Returns the number of entries in the map.
+     *
+     * @return the number of entries
+     */
+    public int size() {
+        lock.lock();
+        try {
+            return size;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Rebuilds the table with room for the given number of entries.
+     * Must be called while holding the lock.
+     *
+     * @param needed the number of entries the new table must hold
+     */
+    private void rehash(int needed) {
+        Table<V> old = table;
+        Table<V> t = new Table<>(tableSizeFor(needed * 2));
+        int mask = t.keys.length() - 1;
+        for (int j = 0; j < old.keys.length(); j++) {
+            long k = old.keys.get(j);
+            if (k != EMPTY && k != TOMBSTONE) {
+                int i = mix(k) & mask;
+                while (t.keys.get(i) != EMPTY) {
+                    i = (i + 1) & mask;
+                }
+                t.values.set(i, old.values.get(j));
+                t.keys.set(i, k);
+            }
+        }
+        tombstones = 0;
+        table = t;
+    }
+
+    private static void checkKey(long key) {
+        if (key == EMPTY || key == TOMBSTONE) {
+            throw new IllegalArgumentException("Reserved key: " + key);
+        }
+    }
+
+    private static int mix(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+
+    private static int tableSizeFor(int n) {
+        int cap = 16;
+        while (cap < n) {
+            cap <<= 1;
+        }
+        return cap;
+    }
+
+    /**
+     * Parallel key and value arrays forming one generation of the table.
+     */
+    private static class Table<V> {
+        final AtomicLongArray keys;
+        final AtomicReferenceArray<V> values;
+
+        Table(int capacity) {
+            keys = new AtomicLongArray(capacity);
+            values = new AtomicReferenceArray<>(capacity);
+            for (int i = 0; i < capacity; i++) {
+                keys.set(i, EMPTY);
+            }
+        }
+    }
+}
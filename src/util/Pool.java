@@ -0,0 +1,67 @@
+package src.util;
+
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+/**
+ * Bounded free list of reusable objects.
+ * Objects are created by the factory when the list is empty and discarded
+ * when it is full, so the pool never grows beyond its capacity.
+ *
+ * @param <E> the type of pooled objects
+ */
+public class Pool<E> {
+
+    private final Object[] free;
+    private final Supplier<E> factory;
+    private final ReentrantLock lock;
+    private int size;
+
+    /**
+     * Constructs an empty pool.
+     *
+     * @param capacity maximum number of idle objects kept
+     * @param factory  creates a new object when none is idle
+     */
+    public Pool(int capacity, Supplier<E> factory) {
+        this.free = new Object[capacity];
+        this.factory = factory;
+        this.lock = new ReentrantLock();
+    }
+
+    /**
+     * Takes an idle object, or creates one if none is available.
+     *
+     * @return an object ready for use
+     */
+    @SuppressWarnings("unchecked")
+    public E take() {
+        lock.lock();
+        try {
+            if (size > 0) {
+                E e = (E) free[--size];
+                free[size] = null;
+                return e;
+            }
+        } finally {
+            lock.unlock();
+        }
+        return factory.get();
+    }
+
+    /**
+     * Returns an object to the pool; it is dropped if the pool is full.
+     *
+     * @param e the object to return
+     */
+    public void offer(E e) {
+        lock.lock();
+        try {
+            if (size < free.length) {
+                free[size++] = e;
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+}
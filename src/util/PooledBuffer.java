@@ -0,0 +1,107 @@
+package src.util;
+
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+
+/**
+ * Reference-counted byte array owned by a {@link BufferPool}.
+ * A buffer is acquired with one reference; every holder that keeps it
+ * calls {@link #retain()}, and every holder calls {@link #release()} when done.
+ * The last release returns the buffer to its pool.
+ */
+public class PooledBuffer {
+
+    private static final AtomicIntegerFieldUpdater<PooledBuffer> REF_CNT =
+            AtomicIntegerFieldUpdater.newUpdater(PooledBuffer.class, "refCnt");
+
+    /** Backing array */
+    private final byte[] array;
+
+    /** Pool the buffer returns to */
+    private final BufferPool pool;
+
+    /** Number of holders */
+    private volatile int refCnt;
+
+    /** Where the buffer was acquired, recorded in leak-detection mode */
+    Throwable allocSite;
+
+    /**
+     * Constructs a buffer for the given pool.
+     *
+     * @param pool the owning pool
+     * @param size size of the backing array
+     */
+    PooledBuffer(BufferPool pool, int size) {
+        this.pool = pool;
+        this.array = new byte[size];
+    }
+
+    /**
+     * Returns the backing array.
+     *
+     * @return the backing array
+     */
+    public byte[] array() {
+        return array;
+    }
+
+    /**
+     * Returns the size of the backing array.
+     *
+     * @return the buffer capacity in bytes
+     */
+    public int capacity() {
+        return array.length;
+    }
+
+    /**
+     * Returns the current number of holders.
+     *
+     * @return the reference count
+     */
+    public int refCnt() {
+        return refCnt;
+    }
+
+    /**
+     * Adds a holder.
+     *
+     * @return this buffer
+     * @throws IllegalStateException if the buffer was already released
+     */
+    public PooledBuffer retain() {
+        int c;
+        do {
+            c = refCnt;
+            if (c <= 0) {
+                throw new IllegalStateException("Buffer already released");
+            }
+        } while (!REF_CNT.compareAndSet(this, c, c + 1));
+        return this;
+    }
+
+    /**
+     * Removes a holder, returning the buffer to its pool when none is left.
+     *
+     * @return true if this was the last reference
+     * @throws IllegalStateException if the buffer was already released
+     */
+    public boolean release() {
+        int c = REF_CNT.decrementAndGet(this);
+        if (c < 0) {
+            throw new IllegalStateException("Buffer released too many times");
+        }
+        if (c == 0) {
+            pool.recycle(this);
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Marks the buffer as acquired with a single reference.
+     */
+    void reset() {
+        refCnt = 1;
+    }
+}
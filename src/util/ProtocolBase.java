@@ -1,7 +1,7 @@
 package src.util;
 
-import java.util.ArrayList;
-import java.util.concurrent.locks.Lock;
+import java.util.concurrent.Executor;
+import java.util.concurrent.locks.Condition;
 import java.util.concurrent.locks.ReentrantLock;
 
 /**
@@ -13,38 +13,86 @@ public abstract class ProtocolBase {
     /** Network simulation instance */
     protected final SimNet network;
 
-    /** Lock for thread-safe socket operations */
-    protected final Lock lock;
+    /** Sockets in listening state, keyed by local port */
+    protected final LongHashMap<TSocketBase> listenSockets;
 
-    /** List of sockets in listening state */
-    protected final ArrayList<TSocketBase> listenSockets;
-
-    /** List of established connection sockets */
-    protected final ArrayList<TSocketBase> activeSockets;
+    /** Established connection sockets, keyed by packed (localPort, remotePort) */
+    protected final LongHashMap<TSocketBase> activeSockets;
 
     /** Logger instance */
     protected final Log log;
 
+    /** Executor running the receive pipeline, one thread per task */
+    protected final Executor executor;
+
+    /** Worker lanes processing received segments, empty when segments are processed inline */
+    private final ReceiveLane[] lanes;
+
     /**
-     * Initializes the protocol with network simulation and starts receiver thread.
+     * Initializes the protocol with network simulation and starts receiver thread,
+     * using the default receive pipeline settings.
      *
      * @param net Network simulation instance
      * @throws NullPointerException if net is null
      */
     protected ProtocolBase(SimNet net) {
+        this(net, Const.RCV_LANES, Const.RCV_LANE_QUEUE_SIZE);
+    }
+
+    /**
+     * Initializes the protocol with network simulation and starts the receive pipeline.
+     * With a single lane the receiver thread processes every segment itself; with more
+     * lanes it only drains the network and hands segments to worker lanes sharded by
+     * connection, so segments of one connection are always processed in order.
+     *
+     * @param net           Network simulation instance
+     * @param numLanes      number of worker lanes processing received segments
+     * @param laneQueueSize maximum segments queued on each lane
+     * @throws NullPointerException     if net is null
+     * @throws IllegalArgumentException if numLanes or laneQueueSize is not positive
+     */
+    protected ProtocolBase(SimNet net, int numLanes, int laneQueueSize) {
+        this(net, numLanes, laneQueueSize, Threads.getDefault());
+    }
+
+    /**
+     * Initializes the protocol and starts the receive pipeline on the given executor.
+     * The receiver and every lane block for as long as the protocol lives, so the
+     * executor must run each task on a thread of its own.
+     *
+     * @param net           Network simulation instance
+     * @param numLanes      number of worker lanes processing received segments
+     * @param laneQueueSize maximum segments queued on each lane
+     * @param executor      executor starting the receiver and lane threads
+     * @throws NullPointerException     if net or executor is null
+     * @throws IllegalArgumentException if numLanes or laneQueueSize is not positive
+     */
+    protected ProtocolBase(SimNet net, int numLanes, int laneQueueSize, Executor executor) {
         if (net == null) {
             throw new NullPointerException("Network instance cannot be null");
         }
+        if (executor == null) {
+            throw new NullPointerException("Executor cannot be null");
+        }
+        if (numLanes < 1 || laneQueueSize < 1) {
+            throw new IllegalArgumentException("Lane count and queue size must be positive");
+        }
         this.network = net;
-        this.lock = new ReentrantLock();
-        this.listenSockets = new ArrayList<>();
-        this.activeSockets = new ArrayList<>();
+        this.executor = executor;
+        this.listenSockets = new LongHashMap<>();
+        this.activeSockets = new LongHashMap<>();
         this.log = Log.getLog();
-        new Thread(new ReceiverTask()).start();
+        this.lanes = new ReceiveLane[numLanes == 1 ? 0 : numLanes];
+        for (int i = 0; i < lanes.length; i++) {
+            lanes[i] = new ReceiveLane(laneQueueSize);
+            executor.execute(lanes[i]);
+        }
+        executor.execute(new ReceiverTask());
     }
 
     /**
      * Processes incoming IP segments according to protocol specifications.
+     * The segment is released once this method returns; sockets that keep it must retain it.
      *
      * @param segment TCP segment received from network layer
      */
@@ -60,69 +108,74 @@ public abstract class ProtocolBase {
     }
 
     /**
-     * Adds a socket to the listening sockets list.
+     * Returns the executor running this protocol's threads, so applications can start
+     * their per-connection workers in the same execution mode.
      *
-     * @param socket Socket to add to listening list
+     * @return the executor of this protocol
+     */
+    public Executor getExecutor() {
+        return executor;
+    }
+
+    /**
+     * Adds a socket to the listening sockets table.
+     *
+     * @param socket Socket to add to listening table
      * @throws NullPointerException if socket is null
      */
     public void addListenTSocket(TSocketBase socket) {
         if (socket == null) {
             throw new NullPointerException("Socket cannot be null");
         }
-        lock.lock();
-        try {
-            listenSockets.add(socket);
-        } finally {
-            lock.unlock();
-        }
+        listenSockets.put(socket.localPort, socket);
     }
 
     /**
-     * Adds a socket to the active connections list.
+     * Adds a socket to the active connections table.
      *
-     * @param socket Socket to add to active list
+     * @param socket Socket to add to active table
      * @throws NullPointerException if socket is null
      */
     public void addActiveTSocket(TSocketBase socket) {
         if (socket == null) {
             throw new NullPointerException("Socket cannot be null");
         }
-        lock.lock();
-        try {
-            activeSockets.add(socket);
-        } finally {
-            lock.unlock();
-        }
+        activeSockets.put(connectionKey(socket.localPort, socket.remotePort), socket);
     }
 
     /**
-     * Removes a socket from the listening sockets list.
+     * Removes a socket from the listening sockets table.
      *
-     * @param socket Socket to remove from listening list
+     * @param socket Socket to remove from listening table
      */
     public void removeListenTSocket(TSocketBase socket) {
-        lock.lock();
-        try {
-            listenSockets.remove(socket);
-        } finally {
-            lock.unlock();
+        if (socket != null) {
+            listenSockets.remove(socket.localPort, socket);
         }
     }
 
     /**
-     * Removes a socket from the active connections list.
+     * Removes a socket from the active connections table.
      *
-     * @param socket Socket to remove from active list
+     * @param socket Socket to remove from active table
      */
     public void removeActiveTSocket(TSocketBase socket) {
-        lock.lock();
-        try {
-            activeSockets.remove(socket);
-        } finally {
-            lock.unlock();
+        if (socket != null) {
+            activeSockets.remove(connectionKey(socket.localPort, socket.remotePort), socket);
         }
     }
 
+    /**
+     * Builds the demultiplexing key for a connection.
+     *
+     * @param localPort  local port of the connection
+     * @param remotePort remote port of the connection
+     * @return key identifying the connection in the active table
+     */
+    protected static long connectionKey(int localPort, int remotePort) {
+        return LongHashMap.pack(localPort, remotePort);
+    }
+
     /**
      * Background task that continuously receives network segments.
      * Runs in a separate thread to handle incoming network traffic.
@@ -130,9 +183,78 @@ public abstract class ProtocolBase {
     private class ReceiverTask implements Runnable {
         @Override
         public void run() {
+            Threads.markNetworkThread();
             while (!Thread.currentThread().isInterrupted()) {
                 TCPSegment segment = network.receive();
+                if (lanes.length == 0) {
+                    ipInput(segment);
+                    segment.release();
+                } else {
+                    lanes[laneFor(segment)].put(segment);
+                }
+            }
+        }
+
+        /**
+         * Selects the lane for a segment from its connection ports, so every
+         * segment of a connection lands on the same lane.
+         */
+        private int laneFor(TCPSegment segment) {
+            int h = segment.getDestinationPort() * 31 + segment.getSourcePort();
+            h ^= h >>> 16;
+            return (h & 0x7fffffff) % lanes.length;
+        }
+    }
+
+    /**
+     * Bounded queue of received segments processed in order by its own thread.
+     */
+    private class ReceiveLane implements Runnable {
+
+        private final CircularQueue<TCPSegment> queue;
+        private final ReentrantLock mon;
+        private final Condition notEmpty, notFull;
+
+        ReceiveLane(int capacity) {
+            queue = new CircularQueue<>(capacity);
+            mon = new ReentrantLock();
+            notEmpty = mon.newCondition();
+            notFull = mon.newCondition();
+        }
+
+        /**
+         * Queues a segment, waiting while the lane is full.
+         */
+        void put(TCPSegment segment) {
+            mon.lock();
+            try {
+                while (queue.full()) {
+                    notFull.awaitUninterruptibly();
+                }
+                queue.put(segment);
+                notEmpty.signal();
+            } finally {
+                mon.unlock();
+            }
+        }
+
+        @Override
+        public void run() {
+            Threads.markNetworkThread();
+            while (!Thread.currentThread().isInterrupted()) {
+                TCPSegment segment;
+                mon.lock();
+                try {
+                    while (queue.empty()) {
+                        notEmpty.awaitUninterruptibly();
+                    }
+                    segment = queue.get();
+                    notFull.signal();
+                } finally {
+                    mon.unlock();
+                }
                 ipInput(segment);
+                segment.release();
             }
         }
     }
@@ -1,9 +1,10 @@
 package src.util;
 
 /**
- * Class representing a receiver thread for data reception.
+ * Task representing a receiver for data reception. It can be started on its own thread
+ * or on a protocol executor.
  */
-public class Receiver extends Thread {
+public class Receiver implements Runnable {
 
     protected TSocketBase input;
     protected int recvBuf, recvInterval;
@@ -35,7 +36,7 @@ public class Receiver extends Thread {
     }
 
     /**
-     * Runs the receiver thread, continuously receiving data until all expected data is received.
+     * Runs the receiver, continuously receiving data until all expected data is received.
      */
     @Override
     public void run() {
@@ -0,0 +1,231 @@
+package src.util;
+
+/**
+ * Sender-side SACK scoreboard (RFC 6675) over the segments between the oldest
+ * unacknowledged one and the next one to send.
+ * Each outstanding segment is selectively acknowledged, considered lost, or still
+ * in flight; lost segments are additionally flagged once retransmitted. State is
+ * kept in arrays indexed by sequence number modulo the capacity, which must be at
+ * least the send window. The owner serializes all calls.
+ */
+public class SackScoreboard {
+
+    private final boolean[] sacked, lost, retransmitted;
+
+    /** Oldest unacknowledged sequence number and next sequence number to send */
+    private int una, nxt;
+
+    /** Highest sequence number selectively acknowledged, or una - 1 if none */
+    private int highSacked;
+
+    /** Number of outstanding segments selectively acknowledged */
+    private int sackedCount;
+
+    /**
+     * Constructs an empty scoreboard.
+     *
+     * @param capacity maximum number of outstanding segments
+     * @param start    sequence number of the next segment to send
+     */
+    public SackScoreboard(int capacity, int start) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Capacity must be positive");
+        }
+        sacked = new boolean[capacity];
+        lost = new boolean[capacity];
+        retransmitted = new boolean[capacity];
+        una = nxt = start;
+        highSacked = start - 1;
+    }
+
+    /**
+     * Records a new segment sent, which must be the next sequence number.
+     *
+     * @param seq sequence number of the segment
+     * @throws IllegalStateException if the scoreboard is full or seq is out of order
+     */
+    public void sent(int seq) {
+        if (seq != nxt) {
+            throw new IllegalStateException("Expected sequence number " + nxt + ", got " + seq);
+        }
+        if (nxt - una == sacked.length) {
+            throw new IllegalStateException("Scoreboard full");
+        }
+        clear(seq);
+        nxt++;
+    }
+
+    /**
+     * Slides the scoreboard to a new cumulative acknowledgement.
+     *
+     * @param ackNum the cumulative acknowledgement number
+     */
+    public void ack(int ackNum) {
+        while (una < ackNum && una < nxt) {
+            if (sacked[una % sacked.length]) {
+                sackedCount--;
+            }
+            clear(una);
+            una++;
+        }
+        highSacked = Math.max(highSacked, una - 1);
+    }
+
+    /**
+     * Marks the outstanding segments of a SACK block as received by the peer.
+     *
+     * @param left  first sequence number of the block
+     * @param right sequence number following the block
+     * @return number of segments newly selectively acknowledged
+     */
+    public int sack(int left, int right) {
+        int n = 0;
+        for (int seq = Math.max(left, una); seq < Math.min(right, nxt); seq++) {
+            int i = seq % sacked.length;
+            if (!sacked[i]) {
+                sacked[i] = true;
+                lost[i] = false;
+                sackedCount++;
+                n++;
+            }
+        }
+        if (n > 0) {
+            highSacked = Math.max(highSacked, Math.min(right, nxt) - 1);
+        }
+        return n;
+    }
+
+    /**
+     * Marks as lost every segment not selectively acknowledged that has at least
+     * the given number of selectively acknowledged segments above it.
+     *
+     * @param dupThresh number of segments received after a hole to deem it lost
+     * @return number of segments newly marked lost
+     */
+    public int markLost(int dupThresh) {
+        int n = 0;
+        int above = 0;
+        for (int seq = highSacked; seq >= una; seq--) {
+            int i = seq % sacked.length;
+            if (sacked[i]) {
+                above++;
+            } else if (above >= dupThresh && !lost[i]) {
+                lost[i] = true;
+                n++;
+            }
+        }
+        return n;
+    }
+
+    /**
+     * Marks an outstanding segment as lost unless it was selectively acknowledged.
+     *
+     * @param seq sequence number of the segment
+     */
+    public void lost(int seq) {
+        if (seq >= una && seq < nxt && !sacked[seq % sacked.length]) {
+            lost[seq % lost.length] = true;
+        }
+    }
+
+    /**
+     * Marks every outstanding segment not selectively acknowledged as lost and not
+     * yet retransmitted, as after a retransmission timeout.
+     */
+    public void markAllLost() {
+        for (int seq = una; seq < nxt; seq++) {
+            int i = seq % sacked.length;
+            lost[i] = !sacked[i];
+            retransmitted[i] = false;
+        }
+    }
+
+    /**
+     * Records the retransmission of a segment.
+     *
+     * @param seq sequence number of the segment
+     */
+    public void retransmitted(int seq) {
+        retransmitted[seq % retransmitted.length] = true;
+    }
+
+    /**
+     * Returns the lowest segment marked lost and not retransmitted since.
+     *
+     * @return its sequence number, or -1 if none
+     */
+    public int nextLost() {
+        for (int seq = una; seq < nxt; seq++) {
+            int i = seq % lost.length;
+            if (lost[i] && !retransmitted[i]) {
+                return seq;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Estimates the segments in flight (the RFC 6675 pipe): outstanding segments
+     * neither selectively acknowledged nor lost, plus retransmissions of lost ones.
+     *
+     * @return the number of segments in flight
+     */
+    public int pipe() {
+        int pipe = 0;
+        for (int seq = una; seq < nxt; seq++) {
+            int i = seq % sacked.length;
+            if (!sacked[i]) {
+                if (!lost[i]) {
+                    pipe++;
+                }
+                if (retransmitted[i]) {
+                    pipe++;
+                }
+            }
+        }
+        return pipe;
+    }
+
+    /**
+     * Tells whether a segment was selectively acknowledged.
+     *
+     * @param seq sequence number of an outstanding segment
+     * @return true if the peer holds it
+     */
+    public boolean isSacked(int seq) {
+        return seq >= una && seq < nxt && sacked[seq % sacked.length];
+    }
+
+    /**
+     * Tells whether a segment is considered lost.
+     *
+     * @param seq sequence number of an outstanding segment
+     * @return true if it is marked lost
+     */
+    public boolean isLost(int seq) {
+        return seq >= una && seq < nxt && lost[seq % lost.length];
+    }
+
+    /**
+     * Retrieves the number of outstanding segments selectively acknowledged.
+     *
+     * @return the number of segments the peer holds above the cumulative ACK
+     */
+    public int getSackedCount() {
+        return sackedCount;
+    }
+
+    /**
+     * Retrieves the highest sequence number selectively acknowledged.
+     *
+     * @return the highest SACKed sequence number, or the last cumulatively acknowledged one
+     */
+    public int getHighSacked() {
+        return highSacked;
+    }
+
+    private void clear(int seq) {
+        int i = seq % sacked.length;
+        sacked[i] = lost[i] = retransmitted[i] = false;
+    }
+}
@@ -1,9 +1,10 @@
 package src.util;
 
 /**
- * Class representing a sender thread for data transmission.
+ * Task representing a sender for data transmission. It can be started on its own thread
+ * or on a protocol executor.
  */
-public class Sender extends Thread {
+public class Sender implements Runnable {
 
     protected TSocketBase output;
     protected int sendNum, sendSize, sendInterval;
@@ -38,7 +39,7 @@ public class Sender extends Thread {
     }
 
     /**
-     * Runs the sender thread, repeatedly sending segments until the specified number is sent.
+     * Runs the sender, repeatedly sending segments until the specified number is sent.
      */
     @Override
     public void run() {
@@ -0,0 +1,85 @@
+package src.util;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+
+/**
+ * Long counter padded on both sides so it sits alone on its cache line,
+ * avoiding false sharing between producer and consumer sequences.
+ */
+public class Sequence extends SequenceValue {
+
+    /** Padding after the value */
+    protected long p9, p10, p11, p12, p13, p14, p15;
+
+    /**
+     * Constructs a sequence with the given initial value.
+     *
+     * @param initial the initial value
+     */
+    public Sequence(long initial) {
+        VALUE.setRelease(this, initial);
+    }
+
+    /**
+     * Reads the value with volatile semantics.
+     *
+     * @return the current value
+     */
+    public long get() {
+        return (long) VALUE.getVolatile(this);
+    }
+
+    /**
+     * Reads the value without ordering guarantees; only safe for the owning thread.
+     *
+     * @return the current value
+     */
+    public long getPlain() {
+        return value;
+    }
+
+    /**
+     * Publishes a new value with release semantics.
+     *
+     * @param v the new value
+     */
+    public void setRelease(long v) {
+        VALUE.setRelease(this, v);
+    }
+
+    /**
+     * Atomically sets the value if it equals the expected one.
+     *
+     * @param expected the expected value
+     * @param v        the new value
+     * @return true if the value was updated
+     */
+    public boolean compareAndSet(long expected, long v) {
+        return VALUE.compareAndSet(this, expected, v);
+    }
+
+    private static final VarHandle VALUE;
+
+    static {
+        try {
+            VALUE = MethodHandles.lookup().findVarHandle(SequenceValue.class, "value", long.class);
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+}
+
+/**
+ * Padding before the value; superclass fields are laid out first.
+ */
+class SequencePadding {
+    protected long p1, p2, p3, p4, p5, p6, p7;
+}
+
+/**
+ * Holds the sequence value between the two paddings.
+ */
+class SequenceValue extends SequencePadding {
+    protected long value;
+}
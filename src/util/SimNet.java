@@ -7,13 +7,30 @@ public interface SimNet {
 
     /**
      * Sends a TCP segment over the simulated network.
+     * The caller's reference to the segment is handed over to the network.
      *
      * @param seg TCPSegment to be sent over the network.
      */
     void send(TCPSegment seg);
 
+    /**
+     * Sends a TCP segment only if the network can take it without waiting, as a
+     * congested link would drop it. Used for every segment sent from a protocol
+     * receiver, a receive lane or the timer wheel, where waiting for room could
+     * deadlock with the peer waiting the same way. If the segment is not sent,
+     * the caller keeps its reference. Networks that cannot tell wait as {@link #send}.
+     *
+     * @param seg TCPSegment to be sent over the network.
+     * @return true if the network took the segment
+     */
+    default boolean trySend(TCPSegment seg) {
+        send(seg);
+        return true;
+    }
+
     /**
      * Receives a TCP segment from the simulated network.
+     * The caller owns one reference to the returned segment.
      *
      * @return TCPSegment received from the network.
      */
@@ -43,6 +43,27 @@ public class SimNetMonitor implements SimNet {
         }
     }
 
+    /**
+     * Sends a TCP segment unless the queue is full.
+     *
+     * @param seg TCPSegment to send.
+     * @return true if the segment was queued
+     */
+    @Override
+    public boolean trySend(TCPSegment seg) {
+        mon.lock();
+        try {
+            if (queue.full()) {
+                return false;
+            }
+            queue.put(seg);
+            qEmpty.signalAll();
+            return true;
+        } finally {
+            mon.unlock();
+        }
+    }
+
     /**
      * Receives a TCP segment from the simulated network.
      *
@@ -72,6 +93,6 @@ public class SimNetMonitor implements SimNet {
      */
     @Override
     public int getMTU() {
-        throw new UnsupportedOperationException("Not supported yet. Implementation pending for practice 3...");
+        return Const.MTU_ETHERNET;
     }
 }
\ No newline at end of file
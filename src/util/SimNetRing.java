@@ -0,0 +1,178 @@
+package src.util;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Simulated network backed by a lock-free bounded ring buffer.
+ * Supports a single consumer and either a single producer (SPSC) or
+ * many producers (MPSC). Threads that cannot make progress wait using
+ * the configured {@link WaitStrategy} instead of blocking on a lock.
+ */
+public class SimNetRing implements SimNet {
+
+    /** Ring slots, indexed by sequence modulo capacity */
+    protected final TCPSegment[] ring;
+
+    /** Per-slot publication sequence, only used by the MPSC variant */
+    protected final AtomicLongArray published;
+
+    /** Index mask, capacity minus one */
+    protected final int mask;
+
+    /** Whether several threads may send concurrently */
+    protected final boolean multiProducer;
+
+    /** Strategy used while the ring is full or empty */
+    protected final WaitStrategy waitStrategy;
+
+    /** Next sequence to be claimed by a producer */
+    protected final Sequence tail;
+
+    /** Next sequence to be consumed */
+    protected final Sequence head;
+
+    /**
+     * Constructs a ring-backed network with the default queue size, many producers
+     * and the parking wait strategy.
+     */
+    public SimNetRing() {
+        this(Const.SIMNET_QUEUE_SIZE, true, WaitStrategy.PARK);
+    }
+
+    /**
+     * Constructs a ring-backed network.
+     *
+     * @param capacity      minimum number of buffered segments, rounded up to a power of two
+     * @param multiProducer true for the MPSC variant, false if only one thread ever sends
+     * @param waitStrategy  strategy used while the ring is full or empty
+     */
+    public SimNetRing(int capacity, boolean multiProducer, WaitStrategy waitStrategy) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Capacity must be positive");
+        }
+        if (waitStrategy == null) {
+            throw new NullPointerException("Wait strategy cannot be null");
+        }
+        int size = Integer.highestOneBit(capacity);
+        if (size < capacity) {
+            size <<= 1;
+        }
+        this.ring = new TCPSegment[size];
+        this.mask = size - 1;
+        this.multiProducer = multiProducer;
+        this.waitStrategy = waitStrategy;
+        this.tail = new Sequence(0);
+        this.head = new Sequence(0);
+        if (multiProducer) {
+            published = new AtomicLongArray(size);
+            for (int i = 0; i < size; i++) {
+                published.set(i, -1);
+            }
+        } else {
+            published = null;
+        }
+    }
+
+    /**
+     * Sends a TCP segment, waiting while the ring is full.
+     *
+     * @param seg TCPSegment to send.
+     */
+    @Override
+    public void send(TCPSegment seg) {
+        if (multiProducer) {
+            sendMulti(seg);
+        } else {
+            sendSingle(seg);
+        }
+    }
+
+    /**
+     * Sends a TCP segment unless the ring is full.
+     *
+     * @param seg TCPSegment to send.
+     * @return true if the segment was published
+     */
+    @Override
+    public boolean trySend(TCPSegment seg) {
+        long t;
+        if (multiProducer) {
+            do {
+                t = tail.get();
+                if (t - head.get() > mask) {
+                    return false;
+                }
+            } while (!tail.compareAndSet(t, t + 1));
+            int i = (int) t & mask;
+            ring[i] = seg;
+            published.lazySet(i, t);
+        } else {
+            t = tail.getPlain();
+            if (t - head.get() > mask) {
+                return false;
+            }
+            ring[(int) t & mask] = seg;
+            tail.setRelease(t + 1);
+        }
+        return true;
+    }
+
+    private void sendSingle(TCPSegment seg) {
+        long t = tail.getPlain();
+        for (int round = 0; t - head.get() > mask; round++) {
+            waitStrategy.idle(round);
+        }
+        ring[(int) t & mask] = seg;
+        tail.setRelease(t + 1);
+    }
+
+    private void sendMulti(TCPSegment seg) {
+        long t;
+        for (int round = 0; ; round++) {
+            t = tail.get();
+            if (t - head.get() > mask) {
+                waitStrategy.idle(round);
+            } else if (tail.compareAndSet(t, t + 1)) {
+                break;
+            }
+        }
+        int i = (int) t & mask;
+        ring[i] = seg;
+        published.lazySet(i, t);
+    }
+
+    /**
+     * Receives a TCP segment, waiting while the ring is empty.
+     * Must only be called from a single consumer thread.
+     *
+     * @return TCPSegment received.
+     */
+    @Override
+    public TCPSegment receive() {
+        long h = head.getPlain();
+        int i = (int) h & mask;
+        if (multiProducer) {
+            for (int round = 0; published.get(i) != h; round++) {
+                waitStrategy.idle(round);
+            }
+        } else {
+            for (int round = 0; tail.get() == h; round++) {
+                waitStrategy.idle(round);
+            }
+        }
+        TCPSegment seg = ring[i];
+        ring[i] = null;
+        head.setRelease(h + 1);
+        return seg;
+    }
+
+    /**
+     * Retrieves the Maximum Transmission Unit (MTU) of the network.
+     *
+     * @return MTU of the network.
+     */
+    @Override
+    public int getMTU() {
+        return Const.MTU_ETHERNET;
+    }
+}
@@ -1,5 +1,7 @@
 package src.util;
 
+import java.util.function.Supplier;
+
 /**
  * Simulated full-duplex network interface for TCP communication.
  */
@@ -15,8 +17,21 @@ public class SimNet_FullDuplex {
      * @param lossAck Loss rate for ACK segments.
      */
     public SimNet_FullDuplex(double lossPsh, double lossAck) {
-        instance_left  = new SimNet_Loss(lossAck);
-        instance_right = new SimNet_Loss(lossPsh);
+        this(lossPsh, lossAck, SimNetMonitor::new);
+    }
+
+    /**
+     * Constructs a full-duplex simulated network with specified loss rates,
+     * carrying each direction over a link created by the given factory,
+     * e.g. {@code () -> new SimNetRing(Const.SIMNET_QUEUE_SIZE, true, WaitStrategy.PARK)}.
+     *
+     * @param lossPsh Loss rate for PUSH segments.
+     * @param lossAck Loss rate for ACK segments.
+     * @param links   Factory for the underlying link of each direction.
+     */
+    public SimNet_FullDuplex(double lossPsh, double lossAck, Supplier<? extends SimNet> links) {
+        instance_left  = new SimNet_Loss(lossAck, links.get());
+        instance_right = new SimNet_Loss(lossPsh, links.get());
         left  = new Peer();
         right = new Peer();
     }
@@ -78,6 +93,11 @@ public class SimNet_FullDuplex {
             }
         }
 
+        @Override
+        public boolean trySend(TCPSegment seg) {
+            return (this == left) ? instance_right.trySend(seg) : instance_left.trySend(seg);
+        }
+
         @Override
         public TCPSegment receive() {
             if (this == left) {
@@ -89,7 +109,7 @@ public class SimNet_FullDuplex {
 
         @Override
         public int getMTU() {
-            return Const.MTU_ETHERNET;
+            return (this == left) ? instance_right.getMTU() : instance_left.getMTU();
         }
     }
 }
\ No newline at end of file
@@ -3,9 +3,13 @@ package src.util;
 import java.util.Random;
 
 /**
- * Simulated network with lossy behavior extending SimNet_Monitor.
+ * Simulated network with lossy behavior on top of an underlying link,
+ * a SimNetMonitor by default.
  */
-public class SimNet_Loss extends SimNetMonitor {
+public class SimNet_Loss implements SimNet {
+
+    /** Underlying link carrying the segments that are not lost */
+    protected final SimNet link;
 
     private double lossRate;
     private Random rand;
@@ -17,6 +21,20 @@ public class SimNet_Loss extends SimNetMonitor {
      * @param lossRate The rate of packet loss (0.0 to 1.0).
      */
     public SimNet_Loss(double lossRate) {
+        this(lossRate, new SimNetMonitor());
+    }
+
+    /**
+     * Constructs a lossy simulated network over the given link.
+     *
+     * @param lossRate The rate of packet loss (0.0 to 1.0).
+     * @param link     Underlying link carrying the segments that are not lost.
+     */
+    public SimNet_Loss(double lossRate, SimNet link) {
+        if (link == null) {
+            throw new NullPointerException("Link cannot be null");
+        }
+        this.link = link;
         this.lossRate = lossRate;
         rand = new Random(1L); // Fixed seed for reproducibility
         log = Log.getLog();
@@ -30,19 +48,46 @@ public class SimNet_Loss extends SimNetMonitor {
     @Override
     public void send(TCPSegment seg) {
         if (rand.nextDouble() < lossRate) {
-            log.printRed("\t\t +++++++++ SEGMENT LOST: " + seg + " +++++++++\n");
+            log.print(Log.Level.WARN, Log.RED, () -> "\t\t +++++++++ SEGMENT LOST: " + seg + " +++++++++\n");
+            seg.release();
         } else {
-            super.send(seg);
+            link.send(seg);
         }
     }
 
     /**
-     * Retrieves the MTU (Maximum Transmission Unit) of the network.
+     * Simulates packet loss, then sends the segment unless the link is full.
+     *
+     * @param seg TCPSegment to send.
+     * @return true if the segment was lost or taken by the link
+     */
+    @Override
+    public boolean trySend(TCPSegment seg) {
+        if (rand.nextDouble() < lossRate) {
+            log.print(Log.Level.WARN, Log.RED, () -> "\t\t +++++++++ SEGMENT LOST: " + seg + " +++++++++\n");
+            seg.release();
+            return true;
+        }
+        return link.trySend(seg);
+    }
+
+    /**
+     * Receives a TCP segment from the underlying link.
+     *
+     * @return TCPSegment received.
+     */
+    @Override
+    public TCPSegment receive() {
+        return link.receive();
+    }
+
+    /**
+     * Retrieves the MTU (Maximum Transmission Unit) of the underlying link.
      *
-     * @return MTU of the network.
+     * @return MTU of the underlying link.
      */
     @Override
     public int getMTU() {
-        return Const.MTU_ETHERNET;
+        return link.getMTU();
     }
 }
\ No newline at end of file
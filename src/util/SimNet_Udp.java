@@ -0,0 +1,289 @@
+package src.util;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.PortUnreachableException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Simulated network carrying segments as UDP datagrams over the loopback interface,
+ * so the two ends of a connection can run in separate processes.
+ * Segments are encoded with {@link TCPSegmentCodec} into direct buffers. A single I/O
+ * thread multiplexes the non-blocking channel with a Selector, writing queued segments
+ * and reading arrived datagrams in batches.
+ */
+public class SimNet_Udp implements SimNet, Closeable {
+
+    /** Maximum datagrams handled per direction in one selector round */
+    protected static final int BATCH = 64;
+
+    protected final DatagramChannel channel;
+    protected final Selector selector;
+    protected final SelectionKey key;
+    protected final int datagramSize;
+    protected final ByteBuffer sendBuf, recvBuf;
+
+    /** Pool receiving the payloads of decoded datagrams, sized to the datagram */
+    protected final BufferPool payloadPool;
+
+    /** Segments waiting to be written, and segments received waiting for the protocol */
+    protected final CircularQueue<TCPSegment> outbound, inbound;
+    protected final ReentrantLock mon;
+    protected final Condition outNotFull, inNotEmpty;
+
+    /** Segment whose datagram could not be written yet */
+    protected TCPSegment pending;
+
+    private final Log log;
+
+    /**
+     * Constructs a loopback network with Ethernet-sized datagrams.
+     *
+     * @param localPort  UDP port this end binds to
+     * @param remotePort UDP port of the other end
+     * @throws UncheckedIOException if the channel cannot be opened
+     */
+    public SimNet_Udp(int localPort, int remotePort) {
+        this(localPort, remotePort, Const.MTU_ETHERNET);
+    }
+
+    /**
+     * Constructs a loopback network.
+     *
+     * @param localPort    UDP port this end binds to
+     * @param remotePort   UDP port of the other end
+     * @param datagramSize maximum datagram size, which is also the MTU
+     * @throws UncheckedIOException if the channel cannot be opened
+     */
+    public SimNet_Udp(int localPort, int remotePort, int datagramSize) {
+        if (datagramSize <= Const.IP_HEADER + Const.TCP_HEADER) {
+            throw new IllegalArgumentException("Datagram size too small: " + datagramSize);
+        }
+        this.datagramSize = datagramSize;
+        sendBuf = ByteBuffer.allocateDirect(datagramSize);
+        recvBuf = ByteBuffer.allocateDirect(datagramSize);
+        payloadPool = (datagramSize <= BufferPool.getDefault().getBufferSize())
+                ? BufferPool.getDefault() : new BufferPool(datagramSize, Const.SIMNET_QUEUE_SIZE);
+        outbound = new CircularQueue<>(Const.SIMNET_QUEUE_SIZE);
+        inbound = new CircularQueue<>(Const.SIMNET_QUEUE_SIZE);
+        mon = new ReentrantLock();
+        outNotFull = mon.newCondition();
+        inNotEmpty = mon.newCondition();
+        log = Log.getLog();
+        try {
+            InetAddress lo = InetAddress.getLoopbackAddress();
+            channel = DatagramChannel.open();
+            channel.bind(new InetSocketAddress(lo, localPort));
+            channel.connect(new InetSocketAddress(lo, remotePort));
+            channel.configureBlocking(false);
+            selector = Selector.open();
+            key = channel.register(selector, SelectionKey.OP_READ);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        Thread io = new Thread(new IOTask(), "SimNet_Udp-" + localPort);
+        io.setDaemon(true);
+        io.start();
+    }
+
+    /**
+     * Queues a TCP segment for transmission, waiting while the send queue is full.
+     *
+     * @param seg TCPSegment to send.
+     */
+    @Override
+    public void send(TCPSegment seg) {
+        mon.lock();
+        try {
+            while (outbound.full()) {
+                outNotFull.awaitUninterruptibly();
+            }
+            outbound.put(seg);
+            if (outbound.size() == 1) {
+                selector.wakeup();
+            }
+        } finally {
+            mon.unlock();
+        }
+    }
+
+    /**
+     * Queues a TCP segment for transmission unless the send queue is full.
+     *
+     * @param seg TCPSegment to send.
+     * @return true if the segment was queued
+     */
+    @Override
+    public boolean trySend(TCPSegment seg) {
+        mon.lock();
+        try {
+            if (outbound.full()) {
+                return false;
+            }
+            outbound.put(seg);
+            if (outbound.size() == 1) {
+                selector.wakeup();
+            }
+            return true;
+        } finally {
+            mon.unlock();
+        }
+    }
+
+    /**
+     * Receives a TCP segment, waiting while none has arrived.
+     *
+     * @return TCPSegment received.
+     */
+    @Override
+    public TCPSegment receive() {
+        mon.lock();
+        try {
+            while (inbound.empty()) {
+                inNotEmpty.awaitUninterruptibly();
+            }
+            return inbound.get();
+        } finally {
+            mon.unlock();
+        }
+    }
+
+    /**
+     * Retrieves the MTU, which is the configured datagram size.
+     *
+     * @return MTU of the network.
+     */
+    @Override
+    public int getMTU() {
+        return datagramSize;
+    }
+
+    /**
+     * Closes the channel and stops the I/O thread.
+     *
+     * @throws IOException if the channel cannot be closed
+     */
+    @Override
+    public void close() throws IOException {
+        selector.close();
+        channel.close();
+    }
+
+    /**
+     * Writes queued segments until the queue is empty, the batch is exhausted,
+     * or the socket send buffer is full.
+     *
+     * @return true if everything queued was written
+     */
+    protected boolean writeBatch() throws IOException {
+        for (int i = 0; i < BATCH; i++) {
+            if (pending == null) {
+                mon.lock();
+                try {
+                    if (outbound.empty()) {
+                        return true;
+                    }
+                    pending = outbound.get();
+                    outNotFull.signal();
+                } finally {
+                    mon.unlock();
+                }
+                sendBuf.clear();
+                try {
+                    TCPSegmentCodec.encode(pending, sendBuf);
+                } catch (RuntimeException e) {
+                    log.printRed("SimNet_Udp: cannot encode " + pending + ": " + e);
+                    pending.release();
+                    pending = null;
+                    continue;
+                }
+                sendBuf.flip();
+            }
+            try {
+                if (channel.write(sendBuf) == 0) {
+                    return false;
+                }
+            } catch (PortUnreachableException e) {
+                // The other end is not up yet; the segment is lost like on a real link
+            }
+            pending.release();
+            pending = null;
+        }
+        return false;
+    }
+
+    /**
+     * Reads arrived datagrams until none is left or the batch is exhausted.
+     * Datagrams are dropped, like on a real link, if they are malformed or the
+     * receive queue is full.
+     */
+    protected void readBatch() throws IOException {
+        for (int i = 0; i < BATCH; i++) {
+            recvBuf.clear();
+            try {
+                if (channel.read(recvBuf) <= 0) {
+                    return;
+                }
+            } catch (PortUnreachableException e) {
+                // Reported for an earlier datagram sent while the other end was down
+                continue;
+            }
+            recvBuf.flip();
+            TCPSegment seg = TCPSegment.obtain();
+            try {
+                TCPSegmentCodec.decode(recvBuf, seg, payloadPool);
+            } catch (RuntimeException e) {
+                log.printRed("SimNet_Udp: dropping malformed datagram: " + e);
+                seg.release();
+                continue;
+            }
+            mon.lock();
+            try {
+                if (inbound.full()) {
+                    seg.release();
+                } else {
+                    inbound.put(seg);
+                    inNotEmpty.signal();
+                }
+            } finally {
+                mon.unlock();
+            }
+        }
+    }
+
+    /**
+     * Selector loop moving datagrams between the channel and the queues.
+     */
+    private class IOTask implements Runnable {
+        @Override
+        public void run() {
+            try {
+                while (channel.isOpen()) {
+                    selector.select();
+                    selector.selectedKeys().clear();
+                    if (key.isReadable()) {
+                        readBatch();
+                    }
+                    boolean drained = writeBatch();
+                    key.interestOps(drained ? SelectionKey.OP_READ
+                            : SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+                }
+            } catch (ClosedSelectorException e) {
+                // Closed by close()
+            } catch (IOException e) {
+                if (channel.isOpen()) {
+                    log.printRed("SimNet_Udp: I/O error: " + e);
+                }
+            }
+        }
+    }
+}
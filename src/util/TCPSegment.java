@@ -1,19 +1,96 @@
 package src.util;
 
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+
 /**
  * Represents a TCP segment.
+ *
+ * <p>Segments are reference counted: whoever creates a segment holds one reference,
+ * handing it to {@link SimNet#send} transfers that reference to the receiving side,
+ * and every holder that keeps the segment (e.g. in a retransmission or receive queue)
+ * calls {@link #retain()} and later {@link #release()}. Segments obtained from the pool
+ * and their pooled payloads are recycled on the last release.
  */
 public class TCPSegment {
 
+    private static final AtomicIntegerFieldUpdater<TCPSegment> REF_CNT =
+            AtomicIntegerFieldUpdater.newUpdater(TCPSegment.class, "refCnt");
+
+    /** Idle segments ready for reuse */
+    private static final Pool<TCPSegment> POOL = new Pool<>(Const.SEGMENT_POOL_SIZE, TCPSegment::new);
+
     private boolean syn, psh, ack, fin;
     private int sourcePort, destinationPort;
-    private int seqNum, ackNum, sackNum = -1; // sack = selective-ack
+    private int seqNum, ackNum;
     private int wnd;
+    private final int[] sackLeft = new int[Const.SACK_BLOCKS], sackRight = new int[Const.SACK_BLOCKS];
+    private int sackBlocks; // sack = selective-ack
     private byte[] data;
+    private ByteBuffer dataBuffer;
+    private int dataOffset, dataLength;
+    private PooledBuffer buffer;
+    private boolean pooled;
+    private volatile int refCnt = 1;
 
     /** Controls whether to display data in toString method. */
     public static boolean SHOW_DATA = false;
 
+    /**
+     * Obtains an empty segment from the pool, holding a single reference.
+     *
+     * @return an empty segment
+     */
+    public static TCPSegment obtain() {
+        TCPSegment seg = POOL.take();
+        seg.pooled = true;
+        seg.refCnt = 1;
+        return seg;
+    }
+
+    /**
+     * Adds a holder to this segment.
+     *
+     * @return this segment
+     * @throws IllegalStateException if the segment was already released
+     */
+    public TCPSegment retain() {
+        int c;
+        do {
+            c = refCnt;
+            if (c <= 0) {
+                throw new IllegalStateException("Segment already released");
+            }
+        } while (!REF_CNT.compareAndSet(this, c, c + 1));
+        return this;
+    }
+
+    /**
+     * Removes a holder from this segment. On the last release the pooled payload
+     * is released and, if the segment came from the pool, it is recycled.
+     *
+     * @return true if this was the last reference
+     * @throws IllegalStateException if the segment was already released
+     */
+    public boolean release() {
+        int c = REF_CNT.decrementAndGet(this);
+        if (c < 0) {
+            throw new IllegalStateException("Segment released too many times");
+        }
+        if (c > 0) {
+            return false;
+        }
+        clearData();
+        if (pooled) {
+            syn = psh = ack = fin = false;
+            sourcePort = destinationPort = 0;
+            seqNum = ackNum = wnd = 0;
+            sackBlocks = 0;
+            POOL.offer(this);
+        }
+        return true;
+    }
+
     /**
      * Sets the SYN flag of the TCP segment.
      *
@@ -159,21 +236,80 @@ public class TCPSegment {
     }
 
     /**
-     * Sets the selective acknowledgment number (SACK) of the TCP segment.
+     * Sets the selective acknowledgment number (SACK) of the TCP segment,
+     * replacing any SACK block with one covering that segment only.
      *
-     * @param sackNum the SACK number
+     * @param sackNum the SACK number, or -1 for none
      */
     public void setSackNum(int sackNum) {
-        this.sackNum = sackNum;
+        sackBlocks = 0;
+        if (sackNum != -1) {
+            addSackBlock(sackNum, sackNum + 1);
+        }
     }
 
     /**
      * Retrieves the selective acknowledgment number (SACK) of the TCP segment.
      *
-     * @return the SACK number
+     * @return the first sequence number of the first SACK block, or -1 if none
      */
     public int getSackNum() {
-        return sackNum;
+        return (sackBlocks > 0) ? sackLeft[0] : -1;
+    }
+
+    /**
+     * Appends a SACK block reporting segments held by the receiver.
+     *
+     * @param left  first sequence number of the block
+     * @param right sequence number following the block
+     * @throws IllegalArgumentException if the block is empty
+     * @throws IllegalStateException    if the segment already carries {@link Const#SACK_BLOCKS} blocks
+     */
+    public void addSackBlock(int left, int right) {
+        if (right <= left) {
+            throw new IllegalArgumentException("Empty SACK block: " + left + ", " + right);
+        }
+        if (sackBlocks == sackLeft.length) {
+            throw new IllegalStateException("Too many SACK blocks");
+        }
+        sackLeft[sackBlocks] = left;
+        sackRight[sackBlocks++] = right;
+    }
+
+    /**
+     * Removes all SACK blocks.
+     */
+    public void clearSackBlocks() {
+        sackBlocks = 0;
+    }
+
+    /**
+     * Retrieves the number of SACK blocks.
+     *
+     * @return the number of SACK blocks carried
+     */
+    public int getSackBlocks() {
+        return sackBlocks;
+    }
+
+    /**
+     * Retrieves the first sequence number of a SACK block.
+     *
+     * @param i index of the block
+     * @return the left edge of the block
+     */
+    public int getSackLeft(int i) {
+        return sackLeft[i];
+    }
+
+    /**
+     * Retrieves the sequence number following a SACK block.
+     *
+     * @param i index of the block
+     * @return the right edge of the block
+     */
+    public int getSackRight(int i) {
+        return sackRight[i];
     }
 
     /**
@@ -200,8 +336,7 @@ public class TCPSegment {
      * @param d byte array containing the data payload
      */
     public void setData(byte[] d) {
-        data = new byte[d.length];
-        System.arraycopy(d, 0, data, 0, d.length);
+        setData(d, 0, d.length);
     }
 
     /**
@@ -212,26 +347,159 @@ public class TCPSegment {
      * @param len    the length of data to copy
      */
     public void setData(byte[] d, int offset, int len) {
+        clearData();
         data = new byte[len];
         System.arraycopy(d, offset, data, 0, len);
+        dataLength = len;
+    }
+
+    /**
+     * Sets the data payload to a slice of a pooled buffer without copying.
+     * The segment retains the buffer and releases it when the segment is released
+     * or its payload replaced; the caller keeps its own reference.
+     *
+     * @param buf    pooled buffer holding the payload
+     * @param offset the starting offset in the buffer
+     * @param len    the length of the payload
+     */
+    public void setData(PooledBuffer buf, int offset, int len) {
+        buf.retain();
+        clearData();
+        buffer = buf;
+        data = buf.array();
+        dataOffset = offset;
+        dataLength = len;
+    }
+
+    /**
+     * Sets the data payload to a slice of the given array without copying.
+     * The array must not be modified while the segment is in use.
+     *
+     * @param d      array holding the payload
+     * @param offset the starting offset in the array
+     * @param len    the length of the payload
+     */
+    public void wrapData(byte[] d, int offset, int len) {
+        clearData();
+        data = d;
+        dataOffset = offset;
+        dataLength = len;
+    }
+
+    /**
+     * Sets the data payload to the remaining bytes of the buffer without copying,
+     * e.g. a slice of a memory-mapped file. The bytes must not be modified while the
+     * segment is in use; the position and limit of the buffer are not used afterwards.
+     *
+     * @param src buffer holding the payload, heap or direct
+     */
+    public void setData(ByteBuffer src) {
+        clearData();
+        dataBuffer = src.slice();
+        dataLength = dataBuffer.remaining();
+    }
+
+    /**
+     * Drops the payload, releasing its pooled buffer if any.
+     */
+    private void clearData() {
+        if (buffer != null) {
+            buffer.release();
+            buffer = null;
+        }
+        data = null;
+        dataBuffer = null;
+        dataOffset = dataLength = 0;
     }
 
     /**
      * Retrieves the data payload of the TCP segment.
+     * When the payload is a slice of a larger array, a copy of the slice is returned;
+     * use {@link #getDataArray()} and {@link #getDataOffset()} to avoid the copy.
      *
      * @return byte array containing the data payload
      */
     public byte[] getData() {
+        if (dataBuffer == null && (data == null || (dataOffset == 0 && dataLength == data.length))) {
+            return data;
+        }
+        byte[] d = new byte[dataLength];
+        copyData(0, d, 0, dataLength);
+        return d;
+    }
+
+    /**
+     * Retrieves a read-only view of the data payload, whatever holds it, with its own
+     * position and limit.
+     *
+     * @return a view of the payload, or null if there is no payload
+     */
+    public ByteBuffer getDataBuffer() {
+        if (dataBuffer != null) {
+            return dataBuffer.asReadOnlyBuffer();
+        }
+        return (data == null) ? null : ByteBuffer.wrap(data, dataOffset, dataLength).slice().asReadOnlyBuffer();
+    }
+
+    /**
+     * Copies part of the data payload into an array, whatever holds the payload.
+     *
+     * @param from   offset in the payload
+     * @param dst    destination array
+     * @param offset offset in the destination array
+     * @param len    number of bytes to copy
+     */
+    public void copyData(int from, byte[] dst, int offset, int len) {
+        if (dataBuffer != null) {
+            dataBuffer.get(from, dst, offset, len);
+        } else {
+            System.arraycopy(data, dataOffset + from, dst, offset, len);
+        }
+    }
+
+    /**
+     * Copies part of the data payload into a buffer at its position, advancing it,
+     * whatever holds the payload.
+     *
+     * @param from offset in the payload
+     * @param dst  destination buffer
+     * @param len  number of bytes to copy
+     */
+    public void copyData(int from, ByteBuffer dst, int len) {
+        if (dataBuffer != null) {
+            dst.put(dst.position(), dataBuffer, from, len);
+            dst.position(dst.position() + len);
+        } else {
+            dst.put(data, dataOffset + from, len);
+        }
+    }
+
+    /**
+     * Retrieves the array backing the data payload, which starts at {@link #getDataOffset()}.
+     *
+     * @return the backing array, or null if there is no payload or it is held in a
+     * buffer set with {@link #setData(ByteBuffer)}
+     */
+    public byte[] getDataArray() {
         return data;
     }
 
+    /**
+     * Retrieves the offset of the data payload in the backing array.
+     *
+     * @return offset of the payload
+     */
+    public int getDataOffset() {
+        return dataOffset;
+    }
+
     /**
      * Retrieves the length of the data payload.
      *
      * @return length of the data payload
      */
     public int getDataLength() {
-        return (data == null) ? 0 : data.length;
+        return dataLength;
     }
 
     /**
@@ -257,14 +525,15 @@ public class TCPSegment {
                     .append(", src = ").append(sourcePort)
                     .append(", dst = ").append(destinationPort)
                     .append(", seqNum = ").append(seqNum);
-            if (data != null && SHOW_DATA) {
+            if (dataLength > 0 && SHOW_DATA) {
+                byte[] d = getData();
                 str.append(", data = {");
-                for (int i = 0; i < data.length - 1; i++) {
-                    str.append(data[i]).append(",");
+                for (int i = 0; i < dataLength - 1; i++) {
+                    str.append(d[i]).append(",");
                 }
-                str.append(data[data.length - 1]).append("}");
-            } else if (data != null) {
-                str.append(", payload = ").append(data.length);
+                str.append(d[dataLength - 1]).append("}");
+            } else if (dataLength > 0) {
+                str.append(", payload = ").append(dataLength);
             }
         } else if (ack) {
             str.append("ACK")
@@ -272,8 +541,11 @@ public class TCPSegment {
                     .append(", dst = ").append(destinationPort)
                     .append(", ackNum = ").append(ackNum)
                     .append(", wnd = ").append(wnd);
-            if (sackNum != -1) {
-                str.append(", sackNum = ").append(sackNum);
+            if (sackBlocks > 0) {
+                str.append(", sack =");
+                for (int i = 0; i < sackBlocks; i++) {
+                    str.append(" [").append(sackLeft[i]).append(",").append(sackRight[i]).append(")");
+                }
             }
         }
         str.append("]");
@@ -0,0 +1,284 @@
+package src.util;
+
+import java.nio.BufferOverflowException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Binary wire format for TCP segments.
+ * A segment is written as a 20-byte IPv4 header ({@link Const#IP_HEADER}) followed by a
+ * 20-byte TCP header ({@link Const#TCP_HEADER}), a SACK option when the segment carries
+ * SACK blocks, and the payload. Both headers carry real Internet checksums.
+ * Sequence, acknowledgement and SACK numbers are written as they are, in segments.
+ *
+ * <p>Encoding and decoding work on heap or direct buffers in big-endian order, start at
+ * the buffer position, advance it past the segment and allocate nothing.
+ */
+public final class TCPSegmentCodec {
+
+    /** TCP flag bits */
+    private static final int FIN = 0x01, SYN = 0x02, PSH = 0x08, ACK = 0x10;
+
+    /** SACK option: two NOPs for alignment, kind and length, then 8 bytes per block */
+    private static final int SACK_OPTION = 4, SACK_BLOCK = 8;
+
+    /** TCP option kinds */
+    private static final int OPT_END = 0, OPT_NOP = 1, OPT_SACK = 5;
+
+    /** IPv4 loopback address used as source and destination */
+    private static final int LOOPBACK = 0x7F000001;
+
+    /** IP protocol number of TCP */
+    private static final int PROTO_TCP = 6;
+
+    private TCPSegmentCodec() {
+    }
+
+    /**
+     * Returns the number of bytes needed to encode the segment.
+     *
+     * @param seg the segment
+     * @return the encoded length in bytes
+     */
+    public static int encodedLength(TCPSegment seg) {
+        return Const.IP_HEADER + tcpHeaderLength(seg) + seg.getDataLength();
+    }
+
+    private static int tcpHeaderLength(TCPSegment seg) {
+        int n = seg.getSackBlocks();
+        return Const.TCP_HEADER + (n > 0 ? SACK_OPTION + n * SACK_BLOCK : 0);
+    }
+
+    /**
+     * Writes the segment at the buffer position and advances the position past it.
+     *
+     * @param seg the segment to encode
+     * @param dst the destination buffer, in big-endian order
+     * @throws BufferOverflowException         if the buffer has not enough room
+     * @throws IllegalArgumentException         if the buffer is not big-endian
+     */
+    public static void encode(TCPSegment seg, ByteBuffer dst) {
+        checkOrder(dst);
+        int total = encodedLength(seg);
+        if (dst.remaining() < total) {
+            throw new BufferOverflowException();
+        }
+        int ip = dst.position();
+        int tcp = ip + Const.IP_HEADER;
+        int hlen = tcpHeaderLength(seg);
+
+        dst.put(ip, (byte) 0x45);
+        dst.put(ip + 1, (byte) 0);
+        dst.putShort(ip + 2, (short) total);
+        dst.putInt(ip + 4, 0x4000); // id 0, don't fragment
+        dst.put(ip + 8, (byte) 64);
+        dst.put(ip + 9, (byte) PROTO_TCP);
+        dst.putShort(ip + 10, (short) 0);
+        dst.putInt(ip + 12, LOOPBACK);
+        dst.putInt(ip + 16, LOOPBACK);
+        dst.putShort(ip + 10, (short) ~fold(sum(dst, ip, Const.IP_HEADER, 0)));
+
+        int flags = (seg.isFin() ? FIN : 0) | (seg.isSyn() ? SYN : 0)
+                | (seg.isPsh() ? PSH : 0) | (seg.isAck() ? ACK : 0);
+        dst.putShort(tcp, (short) seg.getSourcePort());
+        dst.putShort(tcp + 2, (short) seg.getDestinationPort());
+        dst.putInt(tcp + 4, seg.getSeqNum());
+        dst.putInt(tcp + 8, seg.getAckNum());
+        dst.putShort(tcp + 12, (short) ((hlen / 4) << 12 | flags));
+        dst.putShort(tcp + 14, (short) Math.min(Math.max(seg.getWnd(), 0), 0xFFFF));
+        dst.putShort(tcp + 16, (short) 0);
+        dst.putShort(tcp + 18, (short) 0);
+        int blocks = seg.getSackBlocks();
+        if (blocks > 0) {
+            int opt = tcp + Const.TCP_HEADER;
+            dst.put(opt, (byte) OPT_NOP);
+            dst.put(opt + 1, (byte) OPT_NOP);
+            dst.put(opt + 2, (byte) OPT_SACK);
+            dst.put(opt + 3, (byte) (2 + blocks * SACK_BLOCK));
+            for (int i = 0; i < blocks; i++) {
+                dst.putInt(opt + SACK_OPTION + i * SACK_BLOCK, seg.getSackLeft(i));
+                dst.putInt(opt + SACK_OPTION + i * SACK_BLOCK + 4, seg.getSackRight(i));
+            }
+        }
+        int len = seg.getDataLength();
+        if (len > 0) {
+            dst.position(tcp + hlen);
+            seg.copyData(0, dst, len);
+        }
+        int tcpLen = hlen + len;
+        dst.putShort(tcp + 16, (short) ~fold(sum(dst, tcp, tcpLen, pseudoHeaderSum(tcpLen))));
+        dst.position(ip + total);
+    }
+
+    /**
+     * Reads a segment at the buffer position into the given segment and advances the
+     * position past it. For heap buffers the payload is a view of the buffer's backing
+     * array, which must not be modified while the segment is in use; for direct buffers
+     * the payload is copied into a buffer of the default pool.
+     *
+     * @param src  the source buffer, in big-endian order
+     * @param into the segment to fill; its previous payload is dropped
+     * @throws BufferUnderflowException if the buffer does not hold a whole segment
+     * @throws IllegalArgumentException if the headers are malformed or a checksum is wrong
+     */
+    public static void decode(ByteBuffer src, TCPSegment into) {
+        decode(src, into, BufferPool.getDefault());
+    }
+
+    /**
+     * Reads a segment at the buffer position into the given segment and advances the
+     * position past it, copying the payload of a direct buffer into a buffer of the
+     * given pool, whose buffers must hold the largest payload expected.
+     *
+     * @param src  the source buffer, in big-endian order
+     * @param into the segment to fill; its previous payload is dropped
+     * @param pool the pool providing payload buffers for direct sources
+     * @throws BufferUnderflowException if the buffer does not hold a whole segment
+     * @throws IllegalArgumentException if the headers are malformed, a checksum is wrong
+     *                                  or the payload does not fit the pool's buffers
+     */
+    public static void decode(ByteBuffer src, TCPSegment into, BufferPool pool) {
+        checkOrder(src);
+        int ip = src.position();
+        if (src.remaining() < Const.IP_HEADER + Const.TCP_HEADER) {
+            throw new BufferUnderflowException();
+        }
+        if (src.get(ip) != 0x45 || src.get(ip + 9) != PROTO_TCP) {
+            throw new IllegalArgumentException("Not an IPv4 TCP packet");
+        }
+        int total = src.getShort(ip + 2) & 0xFFFF;
+        if (total > src.remaining()) {
+            throw new BufferUnderflowException();
+        }
+        if (fold(sum(src, ip, Const.IP_HEADER, 0)) != 0xFFFF) {
+            throw new IllegalArgumentException("Bad IP header checksum");
+        }
+        int tcp = ip + Const.IP_HEADER;
+        int tcpLen = total - Const.IP_HEADER;
+        int offFlags = src.getShort(tcp + 12) & 0xFFFF;
+        int hlen = (offFlags >>> 12) * 4;
+        if (hlen < Const.TCP_HEADER || hlen > tcpLen) {
+            throw new IllegalArgumentException("Bad TCP header length: " + hlen);
+        }
+        if (fold(sum(src, tcp, tcpLen, pseudoHeaderSum(tcpLen))) != 0xFFFF) {
+            throw new IllegalArgumentException("Bad TCP checksum");
+        }
+
+        into.setFin((offFlags & FIN) != 0);
+        into.setSyn((offFlags & SYN) != 0);
+        into.setPsh((offFlags & PSH) != 0);
+        into.setAck((offFlags & ACK) != 0);
+        into.setSourcePort(src.getShort(tcp) & 0xFFFF);
+        into.setDestinationPort(src.getShort(tcp + 2) & 0xFFFF);
+        into.setSeqNum(src.getInt(tcp + 4));
+        into.setAckNum(src.getInt(tcp + 8));
+        into.setWnd(src.getShort(tcp + 14) & 0xFFFF);
+        readSack(src, tcp + Const.TCP_HEADER, tcp + hlen, into);
+
+        int payload = tcp + hlen;
+        int len = tcpLen - hlen;
+        if (len == 0) {
+            into.wrapData(null, 0, 0);
+        } else if (src.hasArray()) {
+            into.wrapData(src.array(), src.arrayOffset() + payload, len);
+        } else {
+            if (len > pool.getBufferSize()) {
+                throw new IllegalArgumentException("Payload larger than pool buffers: " + len);
+            }
+            PooledBuffer buf = pool.acquire();
+            src.position(payload);
+            src.get(buf.array(), 0, len);
+            into.setData(buf, 0, len);
+            buf.release();
+        }
+        src.position(ip + total);
+    }
+
+    /**
+     * Copies the blocks of the SACK option, if any, into the segment. Blocks beyond
+     * {@link Const#SACK_BLOCKS} are ignored.
+     */
+    private static void readSack(ByteBuffer src, int opt, int end, TCPSegment into) {
+        into.clearSackBlocks();
+        while (opt < end) {
+            int kind = src.get(opt) & 0xFF;
+            if (kind == OPT_END) {
+                break;
+            }
+            if (kind == OPT_NOP) {
+                opt++;
+                continue;
+            }
+            if (opt + 1 >= end) {
+                break;
+            }
+            int len = src.get(opt + 1) & 0xFF;
+            if (len < 2 || opt + len > end) {
+                throw new IllegalArgumentException("Bad TCP option length: " + len);
+            }
+            if (kind == OPT_SACK) {
+                if ((len - 2) % SACK_BLOCK != 0) {
+                    throw new IllegalArgumentException("Bad SACK option length: " + len);
+                }
+                int blocks = Math.min((len - 2) / SACK_BLOCK, Const.SACK_BLOCKS);
+                for (int i = 0; i < blocks; i++) {
+                    int left = src.getInt(opt + 2 + i * SACK_BLOCK);
+                    int right = src.getInt(opt + 6 + i * SACK_BLOCK);
+                    if (right <= left) {
+                        throw new IllegalArgumentException("Bad SACK block: " + left + ", " + right);
+                    }
+                    into.addSackBlock(left, right);
+                }
+                return;
+            }
+            opt += len;
+        }
+    }
+
+    private static void checkOrder(ByteBuffer buf) {
+        if (buf.order() != ByteOrder.BIG_ENDIAN) {
+            throw new IllegalArgumentException("Buffer must be big-endian");
+        }
+    }
+
+    /**
+     * Sum of the TCP pseudo header fields for loopback addresses.
+     */
+    private static int pseudoHeaderSum(int tcpLen) {
+        return 2 * ((LOOPBACK >>> 16) + (LOOPBACK & 0xFFFF)) + PROTO_TCP + tcpLen;
+    }
+
+    /**
+     * Adds the 16-bit big-endian words of a region to an initial sum.
+     */
+    private static int sum(ByteBuffer buf, int from, int len, int initial) {
+        long s = initial;
+        int end = from + len;
+        int i = from;
+        for (; i + 3 < end; i += 4) {
+            int w = buf.getInt(i);
+            s += (w >>> 16) + (w & 0xFFFF);
+        }
+        for (; i + 1 < end; i += 2) {
+            s += buf.getShort(i) & 0xFFFF;
+        }
+        if (i < end) {
+            s += (buf.get(i) & 0xFF) << 8;
+        }
+        while ((s >>> 16) != 0) {
+            s = (s & 0xFFFF) + (s >>> 16);
+        }
+        return (int) s;
+    }
+
+    /**
+     * Folds a sum into 16 bits with end-around carry.
+     */
+    private static int fold(int s) {
+        while ((s >>> 16) != 0) {
+            s = (s & 0xFFFF) + (s >>> 16);
+        }
+        return s;
+    }
+}
@@ -0,0 +1,359 @@
+package src.util;
+
+import java.util.Collection;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Readiness multiplexer letting one thread serve many sockets, in the manner of epoll.
+ * <p>
+ * Sockets registered with a selector report readiness events as they happen, from
+ * the receive path: a queued connection, received data or end of stream, room in
+ * the send window, an established connection. The event is recorded on the socket's
+ * key, which is appended to the selector's ready list unless it is already there, so
+ * selecting never scans the registered sockets.
+ * <p>
+ * Readiness is edge-triggered: an event is reported once, and the application must
+ * then consume it until the non-blocking operation reports nothing left, i.e. until
+ * tryAccept returns null, tryReceiveData returns 0 or trySendData takes less than
+ * offered, before waiting again.
+ */
+public class TSelector {
+
+    /** Interest and readiness operations */
+    public static final int OP_ACCEPT = 1,
+            OP_READ = 2,
+            OP_WRITE = 4,
+            OP_CONNECT = 8;
+
+    /** Lock guarding the ready list and every key's operation sets */
+    private final ReentrantLock lock;
+
+    /** Signalled when a key becomes ready or on wakeup */
+    private final Condition ready;
+
+    /** Keys with pending events, linked through Key.next */
+    private Key head, tail;
+
+    /** Whether wakeup was called since the last select */
+    private boolean woken;
+
+    /**
+     * Constructs a selector with no registered sockets.
+     */
+    public TSelector() {
+        lock = new ReentrantLock();
+        ready = lock.newCondition();
+    }
+
+    /**
+     * Registers a socket for the given operations. Operations the socket is already
+     * ready for are reported by the next select.
+     *
+     * @param sc         the socket
+     * @param ops        interest operations
+     * @param attachment object attached to the key, may be null
+     * @return the key of the registration
+     * @throws NullPointerException  if sc is null
+     * @throws IllegalStateException if the socket is already registered
+     */
+    public Key register(TSocketBase sc, int ops, Object attachment) {
+        if (sc == null) {
+            throw new NullPointerException("Socket cannot be null");
+        }
+        Key k = new Key(this, sc, ops, attachment);
+        sc.register(k);
+        k.ready(sc.readyOps());
+        return k;
+    }
+
+    /**
+     * Waits until at least one key is ready or wakeup is called, and moves the ready
+     * keys into the collection.
+     *
+     * @param into collection receiving the ready keys
+     * @return the number of keys added
+     */
+    public int select(Collection<? super Key> into) {
+        lock.lock();
+        try {
+            while (head == null && !woken) {
+                ready.awaitUninterruptibly();
+            }
+            woken = false;
+            return drain(into);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Waits at most the given time until at least one key is ready or wakeup is
+     * called, and moves the ready keys into the collection.
+     *
+     * @param into      collection receiving the ready keys
+     * @param timeoutMs maximum time to wait in milliseconds
+     * @return the number of keys added
+     */
+    public int select(Collection<? super Key> into, long timeoutMs) {
+        lock.lock();
+        try {
+            long nanos = TimeUnit.MILLISECONDS.toNanos(timeoutMs);
+            while (head == null && !woken && nanos > 0) {
+                nanos = ready.awaitNanos(nanos);
+            }
+            woken = false;
+            return drain(into);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return 0;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Moves the ready keys into the collection without waiting.
+     *
+     * @param into collection receiving the ready keys
+     * @return the number of keys added
+     */
+    public int selectNow(Collection<? super Key> into) {
+        lock.lock();
+        try {
+            woken = false;
+            return drain(into);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Makes the current or next select return even if no key is ready.
+     */
+    public void wakeup() {
+        lock.lock();
+        try {
+            woken = true;
+            ready.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Empties the ready list into the collection, setting every key's ready set to
+     * its pending events of interest. Must be called while holding the lock.
+     */
+    private int drain(Collection<? super Key> into) {
+        int n = 0;
+        for (Key k = head; k != null; ) {
+            Key next = k.next;
+            k.next = null;
+            k.queued = false;
+            if (!k.cancelled) {
+                k.readyOps = k.pendingOps & k.interestOps;
+                k.pendingOps &= ~k.readyOps;
+                if (k.readyOps != 0) {
+                    into.add(k);
+                    n++;
+                }
+            }
+            k = next;
+        }
+        head = tail = null;
+        return n;
+    }
+
+    /**
+     * Records events on a key, appending it to the ready list if any is of interest.
+     */
+    private void fire(Key k, int ops) {
+        lock.lock();
+        try {
+            if (k.cancelled) {
+                return;
+            }
+            k.pendingOps |= ops;
+            enqueue(k);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Appends the key to the ready list if it has pending events of interest and is
+     * not there yet. Must be called while holding the lock.
+     */
+    private void enqueue(Key k) {
+        if (k.queued || (k.pendingOps & k.interestOps) == 0) {
+            return;
+        }
+        k.queued = true;
+        if (tail == null) {
+            head = tail = k;
+            ready.signal();
+        } else {
+            tail.next = k;
+            tail = k;
+        }
+    }
+
+    /**
+     * Registration of a socket with a selector.
+     */
+    public static final class Key {
+
+        private final TSelector selector;
+        private final TSocketBase socket;
+        private volatile Object attachment;
+
+        /** Operation sets, guarded by the selector lock */
+        private int interestOps, pendingOps, readyOps;
+
+        /** Ready list state, guarded by the selector lock */
+        private boolean queued, cancelled;
+        private Key next;
+
+        Key(TSelector selector, TSocketBase socket, int interestOps, Object attachment) {
+            this.selector = selector;
+            this.socket = socket;
+            this.interestOps = interestOps;
+            this.attachment = attachment;
+        }
+
+        /**
+         * Records events reported by the socket.
+         *
+         * @param ops the operations the socket became ready for
+         */
+        void ready(int ops) {
+            if (ops != 0) {
+                selector.fire(this, ops);
+            }
+        }
+
+        /**
+         * Returns the registered socket.
+         *
+         * @return the socket of this key
+         */
+        public TSocketBase socket() {
+            return socket;
+        }
+
+        /**
+         * Returns the attached object.
+         *
+         * @return the attachment, or null
+         */
+        public Object attachment() {
+            return attachment;
+        }
+
+        /**
+         * Attaches an object to the key.
+         *
+         * @param attachment the object, may be null
+         */
+        public void attach(Object attachment) {
+            this.attachment = attachment;
+        }
+
+        /**
+         * Returns the interest operations.
+         *
+         * @return the interest set
+         */
+        public int interestOps() {
+            selector.lock.lock();
+            try {
+                return interestOps;
+            } finally {
+                selector.lock.unlock();
+            }
+        }
+
+        /**
+         * Replaces the interest operations. Events that happened while they were not of
+         * interest are reported by the next select.
+         *
+         * @param ops the new interest set
+         */
+        public void interestOps(int ops) {
+            selector.lock.lock();
+            try {
+                interestOps = ops;
+                if (!cancelled) {
+                    selector.enqueue(this);
+                }
+            } finally {
+                selector.lock.unlock();
+            }
+        }
+
+        /**
+         * Returns the operations reported ready by the select that returned this key.
+         *
+         * @return the ready set
+         */
+        public int readyOps() {
+            selector.lock.lock();
+            try {
+                return readyOps;
+            } finally {
+                selector.lock.unlock();
+            }
+        }
+
+        /**
+         * Tells whether the last select reported that a connection is pending.
+         *
+         * @return true if OP_ACCEPT is ready
+         */
+        public boolean isAcceptable() {
+            return (readyOps() & OP_ACCEPT) != 0;
+        }
+
+        /**
+         * Tells whether the last select reported that data or end of stream is available.
+         *
+         * @return true if OP_READ is ready
+         */
+        public boolean isReadable() {
+            return (readyOps() & OP_READ) != 0;
+        }
+
+        /**
+         * Tells whether the last select reported that data can be sent.
+         *
+         * @return true if OP_WRITE is ready
+         */
+        public boolean isWritable() {
+            return (readyOps() & OP_WRITE) != 0;
+        }
+
+        /**
+         * Tells whether the last select reported that the connection got established.
+         *
+         * @return true if OP_CONNECT is ready
+         */
+        public boolean isConnectable() {
+            return (readyOps() & OP_CONNECT) != 0;
+        }
+
+        /**
+         * Cancels the registration. The socket may then be registered again.
+         */
+        public void cancel() {
+            selector.lock.lock();
+            try {
+                cancelled = true;
+            } finally {
+                selector.lock.unlock();
+            }
+            socket.deregister(this);
+        }
+    }
+}
@@ -1,9 +1,7 @@
 package src.util;
 
-import java.util.Timer;
-import java.util.TimerTask;
+import java.nio.ByteBuffer;
 import java.util.concurrent.locks.Condition;
-import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
 
 /**
@@ -15,7 +13,7 @@ public class TSocketBase {
     public SimNet network;
 
     /** Lock for synchronization */
-    protected Lock lock;
+    protected ReentrantLock lock;
 
     /** Condition variable for application waiting */
     protected Condition appCV;
@@ -26,15 +24,33 @@ public class TSocketBase {
     /** Remote port number */
     public int remotePort;
 
-    /** Timer service for retransmission timeout */
-    protected Timer timerService;
+    /** Timer service shared by all sockets */
+    protected TimerWheel timerService;
 
-    /** Timer task for retransmission */
-    protected TimerTask sndRtTimer;
+    /** Reusable timer handle for retransmission */
+    protected TimerWheel.Handle sndRtTimer;
+
+    /** Smoothed round-trip time (ms), negative until the first sample */
+    protected double srtt = -1;
+
+    /** Round-trip time variation (ms) */
+    protected double rttvar;
+
+    /** Retransmission timeout computed from the RTT estimators (ms) */
+    protected long rto = Const.SND_RTO;
+
+    /** Number of times the timeout was doubled since the last forward progress */
+    protected int rtoBackoff;
+
+    /** Bounds of the retransmission timeout (ms) */
+    protected long rtoMin = Const.SND_RTO_MIN, rtoMax = Const.SND_RTO_MAX;
 
     /** Logger instance */
     protected Log log;
 
+    /** Key of the selector this socket is registered with, null if none */
+    protected volatile TSelector.Key selKey;
+
     /**
      * Constructor with network interface.
      *
@@ -44,7 +60,8 @@ public class TSocketBase {
         this.network = network;
         lock = new ReentrantLock();
         appCV = lock.newCondition();
-        timerService = new Timer();
+        timerService = TimerWheel.getShared();
+        sndRtTimer = timerService.newHandle(this::timeout);
         log = Log.getLog();
     }
 
@@ -146,6 +163,28 @@ public class TSocketBase {
         throw new RuntimeException("Not supported yet.");
     }
 
+    /**
+     * Placeholder method for sending the remaining data of several buffers, in order.
+     *
+     * @param srcs the buffers to send from
+     * @return the number of bytes sent
+     * @throws RuntimeException indicating method not supported
+     */
+    public long sendData(ByteBuffer... srcs) {
+        throw new RuntimeException("Not supported yet.");
+    }
+
+    /**
+     * Placeholder method for receiving data into several buffers, filled in order.
+     *
+     * @param dsts the buffers to store received data
+     * @return the actual number of bytes received
+     * @throws RuntimeException indicating method not supported
+     */
+    public long receiveData(ByteBuffer... dsts) {
+        throw new RuntimeException("Not supported yet.");
+    }
+
     /**
      * Placeholder method for processing a received TCP segment.
      *
@@ -166,28 +205,166 @@ public class TSocketBase {
     }
 
     /**
-     * Starts the retransmission timer.
+     * Retrieves the current retransmission timeout, including any backoff.
+     *
+     * @return the retransmission timeout in milliseconds
      */
-    protected void startRTO() {
-        if (sndRtTimer != null) {
-            sndRtTimer.cancel();
+    public long getRTO() {
+        lock.lock();
+        try {
+            return currentRTO();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Computes the timeout to arm: the estimated RTO doubled once per backoff step.
+     *
+     * @return the retransmission timeout in milliseconds
+     */
+    protected long currentRTO() {
+        return Math.min(rto << Math.min(rtoBackoff, 30), rtoMax);
+    }
+
+    /**
+     * Retrieves the smoothed round-trip time.
+     *
+     * @return the smoothed RTT in milliseconds, or -1 before the first sample
+     */
+    public double getSRTT() {
+        lock.lock();
+        try {
+            return srtt;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Sets the bounds of the retransmission timeout.
+     *
+     * @param min lower bound in milliseconds
+     * @param max upper bound in milliseconds
+     */
+    public void setRTOBounds(long min, long max) {
+        if (min < 1 || max < min) {
+            throw new IllegalArgumentException("Invalid RTO bounds: " + min + ", " + max);
+        }
+        lock.lock();
+        try {
+            rtoMin = min;
+            rtoMax = max;
+            rto = Math.min(Math.max(rto, min), max);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Updates the RTT estimators with a new sample (Jacobson/Karels) and recomputes
+     * the retransmission timeout. Following Karn's rule, callers must not take samples
+     * from retransmitted segments.
+     *
+     * @param rttMs the measured round-trip time in milliseconds
+     */
+    protected void rttSample(double rttMs) {
+        if (srtt < 0) {
+            srtt = rttMs;
+            rttvar = rttMs / 2;
+        } else {
+            rttvar = 0.75 * rttvar + 0.25 * Math.abs(srtt - rttMs);
+            srtt = 0.875 * srtt + 0.125 * rttMs;
         }
-        sndRtTimer = new TimerTask() {
-            public void run() {
-                timeout();
+        long v = (long) Math.ceil(srtt + Math.max(Const.TIMER_TICK, 4 * rttvar));
+        rto = Math.min(Math.max(v, rtoMin), rtoMax);
+    }
+
+    /**
+     * Doubles the retransmission timeout after it expired, up to the upper bound.
+     */
+    protected void backoffRTO() {
+        if (currentRTO() < rtoMax) {
+            rtoBackoff++;
+        }
+    }
+
+    /**
+     * Drops the backoff once the peer acknowledges new data, so that losses of
+     * retransmitted segments, which give no RTT samples, do not keep the timeout inflated.
+     */
+    protected void resetRTOBackoff() {
+        rtoBackoff = 0;
+    }
+
+    /**
+     * Returns the selector operations the socket is ready for right now, reported
+     * when it gets registered. Sockets supporting selection override it.
+     *
+     * @return the ready operations
+     */
+    protected int readyOps() {
+        return 0;
+    }
+
+    /**
+     * Reports readiness events to the selector the socket is registered with, if any.
+     *
+     * @param ops the operations the socket became ready for
+     */
+    protected void ready(int ops) {
+        TSelector.Key k = selKey;
+        if (k != null) {
+            k.ready(ops);
+        }
+    }
+
+    /**
+     * Binds the socket to a selector key.
+     *
+     * @param k the key
+     * @throws IllegalStateException if the socket is already registered
+     */
+    void register(TSelector.Key k) {
+        lock.lock();
+        try {
+            if (selKey != null) {
+                throw new IllegalStateException("Socket already registered");
             }
-        };
-        timerService.schedule(sndRtTimer, Const.SND_RTO);
+            selKey = k;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Unbinds the socket from a cancelled selector key.
+     *
+     * @param k the key
+     */
+    void deregister(TSelector.Key k) {
+        lock.lock();
+        try {
+            if (selKey == k) {
+                selKey = null;
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Starts the retransmission timer with the current timeout.
+     */
+    protected void startRTO() {
+        timerService.schedule(sndRtTimer, currentRTO());
     }
 
     /**
      * Stops the retransmission timer.
      */
     protected void stopRTO() {
-        if (sndRtTimer != null) {
-            sndRtTimer.cancel();
-        }
-        sndRtTimer = null;
+        timerService.cancel(sndRtTimer);
     }
 
     /**
@@ -197,10 +374,10 @@ public class TSocketBase {
      */
     protected void printRcvSeg(TCPSegment rseg) {
         if (rseg.isPsh()) {
-            log.printBlue("\t\t\t\t\t\t\t\treceived: " + rseg);
+            log.print(Log.Level.DEBUG, Log.BLUE, "\t\t\t\t\t\t\t\treceived: ", rseg);
         }
         if (rseg.isAck()) {
-            log.printBlue("  received: " + rseg);
+            log.print(Log.Level.DEBUG, Log.BLUE, "  received: ", rseg);
         }
     }
 
@@ -211,10 +388,10 @@ public class TSocketBase {
      */
     protected void printSndSeg(TCPSegment rseg) {
         if (rseg.isPsh()) {
-            log.printPurple("  sent: " + rseg);
+            log.print(Log.Level.DEBUG, Log.PURPLE, "  sent: ", rseg);
         }
         if (rseg.isAck()) {
-            log.printPurple("\t\t\t\t\t\t\t\tsent: " + rseg);
+            log.print(Log.Level.DEBUG, Log.PURPLE, "\t\t\t\t\t\t\t\tsent: ", rseg);
         }
     }
 }
\ No newline at end of file
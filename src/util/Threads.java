@@ -0,0 +1,138 @@
+package src.util;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Execution modes for the long-running tasks of the stack: protocol receivers,
+ * server workers and load generators. Every task passed to one of these executors
+ * runs on a thread of its own, since the tasks block on sockets and queues.
+ * <p>
+ * Virtual threads are created through the Java 21 builder API when the running JVM
+ * has it. The stack blocks only on ReentrantLock conditions, never on monitors,
+ * so a virtual thread waiting in accept or receive releases its carrier.
+ */
+public final class Threads {
+
+    /** Executor used by protocols created without one */
+    private static volatile Executor defaultExecutor;
+
+    /** Set on the threads running the stack itself */
+    private static final ThreadLocal<Boolean> NETWORK_THREAD = new ThreadLocal<>();
+
+    private Threads() {
+    }
+
+    /**
+     * Returns the executor used by protocols created without one: virtual threads if
+     * {@link Const#VIRTUAL_THREADS} is set and the JVM supports them, otherwise
+     * platform threads.
+     *
+     * @return the default executor
+     */
+    public static Executor getDefault() {
+        Executor e = defaultExecutor;
+        if (e == null) {
+            e = (Const.VIRTUAL_THREADS && virtualSupported())
+                    ? executor(virtual("tcp-")) : executor(platform("tcp-", false));
+            defaultExecutor = e;
+        }
+        return e;
+    }
+
+    /**
+     * Replaces the executor used by protocols created afterwards.
+     *
+     * @param executor executor starting one thread per task
+     * @throws NullPointerException if executor is null
+     */
+    public static void setDefault(Executor executor) {
+        if (executor == null) {
+            throw new NullPointerException("Executor cannot be null");
+        }
+        defaultExecutor = executor;
+    }
+
+    /**
+     * Returns an executor starting every task on a new thread of the factory.
+     *
+     * @param factory factory creating the threads
+     * @return an executor backed by the factory
+     * @throws NullPointerException if factory is null
+     */
+    public static Executor executor(ThreadFactory factory) {
+        if (factory == null) {
+            throw new NullPointerException("Thread factory cannot be null");
+        }
+        return task -> factory.newThread(task).start();
+    }
+
+    /**
+     * Returns a factory of platform threads named with the prefix and a counter.
+     *
+     * @param prefix thread name prefix
+     * @param daemon whether the threads are daemons
+     * @return a platform thread factory
+     */
+    public static ThreadFactory platform(String prefix, boolean daemon) {
+        AtomicInteger count = new AtomicInteger();
+        return task -> {
+            Thread t = new Thread(task, prefix + count.getAndIncrement());
+            t.setDaemon(daemon);
+            return t;
+        };
+    }
+
+    /**
+     * Returns a factory of virtual threads named with the prefix and a counter.
+     * Virtual threads are always daemons.
+     *
+     * @param prefix thread name prefix
+     * @return a virtual thread factory
+     * @throws UnsupportedOperationException if the JVM has no virtual threads
+     */
+    public static ThreadFactory virtual(String prefix) {
+        try {
+            Class<?> builderType = Class.forName("java.lang.Thread$Builder");
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            builder = builderType.getMethod("name", String.class, long.class).invoke(builder, prefix, 0L);
+            return (ThreadFactory) builderType.getMethod("factory").invoke(builder);
+        } catch (ReflectiveOperationException e) {
+            throw new UnsupportedOperationException("Virtual threads need Java 21 or later", e);
+        }
+    }
+
+    /**
+     * Marks the current thread as running the stack itself.
+     */
+    static void markNetworkThread() {
+        NETWORK_THREAD.set(Boolean.TRUE);
+    }
+
+    /**
+     * Tells whether the current thread runs the stack itself, i.e. a protocol receiver,
+     * a receive lane or the timer wheel. Such a thread drains the links or keeps every
+     * socket's timers running, so it must never wait for room on a link.
+     *
+     * @return true on a thread of the stack
+     */
+    public static boolean isNetworkThread() {
+        return NETWORK_THREAD.get() != null;
+    }
+
+    /**
+     * Tells whether the running JVM can create virtual threads.
+     *
+     * @return true if {@link #virtual(String)} is supported
+     */
+    public static boolean virtualSupported() {
+        try {
+            Method m = Thread.class.getMethod("ofVirtual");
+            return m != null;
+        } catch (NoSuchMethodException e) {
+            return false;
+        }
+    }
+}
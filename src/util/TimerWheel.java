@@ -0,0 +1,240 @@
+package src.util;
+
+import java.util.Arrays;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Hashed-wheel timer shared by many sockets.
+ * A single background thread advances the wheel one tick at a time and runs every
+ * handle that expired in that tick. Scheduling and cancelling are O(1) and reuse the
+ * same {@link Handle}, so re-arming a timer allocates nothing.
+ * <p>
+ * Tasks of every socket share that thread, so a task must never block: one waiting
+ * for room on a link would stop every retransmission, persist and delayed ACK timer
+ * until the link drains. The thread counts as a thread of the stack for
+ * {@link Threads#isNetworkThread()}, so sockets drop what a full link cannot take.
+ */
+public class TimerWheel {
+
+    /** Shared instance used by sockets */
+    private static volatile TimerWheel shared;
+
+    /** Tick duration in nanoseconds */
+    private final long tickNanos;
+
+    /** Buckets of pending handles, one per tick slot */
+    private final Handle[] buckets;
+
+    /** Index mask, wheel size minus one */
+    private final int mask;
+
+    /** Lock protecting the buckets and handle links */
+    private final ReentrantLock lock;
+
+    /** Time origin of the wheel */
+    private final long startNanos;
+
+    /** Next tick to be processed by the worker */
+    private long tick;
+
+    /** Logger instance */
+    private final Log log;
+
+    /**
+     * Constructs a timer wheel and starts its worker thread.
+     *
+     * @param tickMillis tick duration in milliseconds
+     * @param wheelSize  number of slots, rounded up to a power of two
+     */
+    public TimerWheel(long tickMillis, int wheelSize) {
+        if (tickMillis < 1 || wheelSize < 1) {
+            throw new IllegalArgumentException("Tick and wheel size must be positive");
+        }
+        int size = Integer.highestOneBit(wheelSize);
+        if (size < wheelSize) {
+            size <<= 1;
+        }
+        tickNanos = tickMillis * 1_000_000L;
+        buckets = new Handle[size];
+        mask = size - 1;
+        lock = new ReentrantLock();
+        log = Log.getLog();
+        startNanos = System.nanoTime();
+        Thread worker = new Thread(new Worker(), "TimerWheel");
+        worker.setDaemon(true);
+        worker.start();
+    }
+
+    /**
+     * Returns the timer wheel shared by the whole JVM, creating it on first use.
+     *
+     * @return the shared TimerWheel instance
+     */
+    public static TimerWheel getShared() {
+        if (shared == null) {
+            synchronized (TimerWheel.class) {
+                if (shared == null) {
+                    shared = new TimerWheel(Const.TIMER_TICK, Const.TIMER_WHEEL_SIZE);
+                }
+            }
+        }
+        return shared;
+    }
+
+    /**
+     * Creates a reusable handle that runs the given task each time it expires.
+     *
+     * @param task task to run on expiry
+     * @return a new, unscheduled handle
+     */
+    public Handle newHandle(Runnable task) {
+        if (task == null) {
+            throw new NullPointerException("Task cannot be null");
+        }
+        return new Handle(task);
+    }
+
+    /**
+     * Schedules the handle to expire after the given delay, replacing any pending expiry.
+     *
+     * @param h       the handle to schedule
+     * @param delayMs delay in milliseconds
+     */
+    public void schedule(Handle h, long delayMs) {
+        long ticks = Math.max(1, (delayMs * 1_000_000L + tickNanos - 1) / tickNanos);
+        lock.lock();
+        try {
+            unlink(h);
+            h.generation++;
+            h.rounds = ticks / buckets.length;
+            h.bucket = (int) (tick + ticks) & mask;
+            h.next = buckets[h.bucket];
+            if (h.next != null) {
+                h.next.prev = h;
+            }
+            buckets[h.bucket] = h;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Cancels the pending expiry of the handle, if any.
+     * A task that is already running is not interrupted.
+     *
+     * @param h the handle to cancel
+     */
+    public void cancel(Handle h) {
+        lock.lock();
+        try {
+            unlink(h);
+            h.generation++;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Removes the handle from its bucket. Must be called while holding the lock.
+     */
+    private void unlink(Handle h) {
+        if (h.bucket < 0) {
+            return;
+        }
+        if (h.prev != null) {
+            h.prev.next = h.next;
+        } else {
+            buckets[h.bucket] = h.next;
+        }
+        if (h.next != null) {
+            h.next.prev = h.prev;
+        }
+        h.prev = h.next = null;
+        h.bucket = -1;
+    }
+
+    /**
+     * Timer entry owned by a socket and re-armed on every schedule call.
+     */
+    public static class Handle {
+
+        private final Runnable task;
+        private Handle prev, next;
+        private int bucket = -1;
+        private long rounds;
+        private volatile long generation;
+
+        private Handle(Runnable task) {
+            this.task = task;
+        }
+    }
+
+    /**
+     * Background task advancing the wheel and running expired handles in bulk.
+     */
+    private class Worker implements Runnable {
+
+        private Handle[] expired = new Handle[64];
+        private long[] generations = new long[64];
+        private int numExpired;
+
+        @Override
+        public void run() {
+            Threads.markNetworkThread();
+            while (true) {
+                long target = (System.nanoTime() - startNanos) / tickNanos;
+                lock.lock();
+                try {
+                    while (tick <= target) {
+                        collect((int) tick & mask);
+                        tick++;
+                    }
+                } finally {
+                    lock.unlock();
+                }
+                for (int i = 0; i < numExpired; i++) {
+                    Handle h = expired[i];
+                    expired[i] = null;
+                    if (h.generation == generations[i]) {
+                        try {
+                            h.task.run();
+                        } catch (RuntimeException e) {
+                            log.printRed("Timer task failed: " + e);
+                        }
+                    }
+                }
+                numExpired = 0;
+                long sleep = startNanos + (target + 1) * tickNanos - System.nanoTime();
+                if (sleep > 0) {
+                    try {
+                        Thread.sleep(sleep / 1_000_000L, (int) (sleep % 1_000_000L));
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+            }
+        }
+
+        /**
+         * Moves every handle of the bucket whose rounds are exhausted to the expired list.
+         */
+        private void collect(int bucket) {
+            Handle h = buckets[bucket];
+            while (h != null) {
+                Handle next = h.next;
+                if (h.rounds > 0) {
+                    h.rounds--;
+                } else {
+                    unlink(h);
+                    if (numExpired == expired.length) {
+                        expired = Arrays.copyOf(expired, numExpired * 2);
+                        generations = Arrays.copyOf(generations, numExpired * 2);
+                    }
+                    expired[numExpired] = h;
+                    generations[numExpired++] = h.generation;
+                }
+                h = next;
+            }
+        }
+    }
+}
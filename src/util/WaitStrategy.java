@@ -0,0 +1,39 @@
+package src.util;
+
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Strategy used by lock-free queues to wait while they cannot make progress.
+ */
+public interface WaitStrategy {
+
+    /** Busy-spins on the CPU; lowest latency, burns a core per waiting thread */
+    WaitStrategy SPIN = round -> Thread.onSpinWait();
+
+    /** Spins briefly, then yields the processor to other threads */
+    WaitStrategy YIELD = round -> {
+        if (round < 100) {
+            Thread.onSpinWait();
+        } else {
+            Thread.yield();
+        }
+    };
+
+    /** Spins and yields briefly, then parks with a growing timeout up to one millisecond */
+    WaitStrategy PARK = round -> {
+        if (round < 100) {
+            Thread.onSpinWait();
+        } else if (round < 200) {
+            Thread.yield();
+        } else {
+            LockSupport.parkNanos(Math.min(1L << Math.min(round - 200, 20), 1_000_000L));
+        }
+    };
+
+    /**
+     * Waits once before the caller checks its condition again.
+     *
+     * @param round number of consecutive unsuccessful attempts so far, starting at 0
+     */
+    void idle(int round);
+}